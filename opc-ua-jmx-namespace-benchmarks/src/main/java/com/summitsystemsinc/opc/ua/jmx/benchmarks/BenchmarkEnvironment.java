@@ -0,0 +1,108 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.OpcUaServer;
+import com.digitalpetri.opcua.sdk.server.api.config.OpcUaServerConfig;
+import com.digitalpetri.opcua.sdk.server.identity.UsernameIdentityValidator;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateManager;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateValidator;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UShort;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespace;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespaceConfig;
+import com.summitsystemsinc.opc.ua.jmx.types.DefaultTypes;
+import java.io.File;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+/**
+ * Local MBeanServer filled with {@link SyntheticMBean}s and an OPC-UA server
+ * that is never started, for building namespaces without any networking.
+ *
+ * @author Justin
+ */
+public class BenchmarkEnvironment {
+
+	public static final String NAMESPACE_URI = "urn:summitsystemsinc:opcua:jmx:benchmark";
+	public static final int ATTRIBUTES_PER_BEAN = 50;
+
+	private final MBeanServer mBeanServer;
+	private final List<SyntheticMBean> beans;
+	private final OpcUaServer server;
+	private final UShort namespaceIndex;
+
+	/**
+	 * @param attributes Total number of synthetic attributes.
+	 * @param changePercent Percentage of attributes changed by each advance.
+	 * @throws Exception If the MBeans can not be registered.
+	 */
+	public BenchmarkEnvironment(int attributes, int changePercent) throws Exception {
+		this.mBeanServer = MBeanServerFactory.newMBeanServer();
+		this.beans = SyntheticMBean.registerAll(mBeanServer, attributes,
+				ATTRIBUTES_PER_BEAN, changePercent);
+
+		OpcUaServerConfig config = OpcUaServerConfig.builder()
+				.setApplicationName(LocalizedText.english("summit opc-ua benchmark"))
+				.setApplicationUri("urn:summit:opcua:benchmark")
+				.setCertificateManager(new DefaultCertificateManager())
+				.setCertificateValidator(new DefaultCertificateValidator(new File("./security")))
+				.setIdentityValidator(new UsernameIdentityValidator(true, (challenge) -> false))
+				.setProductUri("urn:summit:opcua:sdk")
+				.setServerName("")
+				.build();
+		this.server = new OpcUaServer(config);
+		this.namespaceIndex = server.getNamespaceManager().registerUri(NAMESPACE_URI);
+	}
+
+	/**
+	 * @param config Namespace options.
+	 * @return A new namespace over the synthetic MBeans, refresh not started.
+	 */
+	public JmxNamespace newNamespace(JmxNamespaceConfig config) {
+		return new JmxNamespace(server, namespaceIndex, NAMESPACE_URI, mBeanServer,
+				DefaultTypes.newTypeFactories(), config);
+	}
+
+	/**
+	 * Changes the configured share of every MBean's attributes.
+	 */
+	public void advance() {
+		beans.stream().forEach(SyntheticMBean::advance);
+	}
+
+	public MBeanServer getMBeanServer() {
+		return mBeanServer;
+	}
+
+	public List<SyntheticMBean> getBeans() {
+		return beans;
+	}
+
+	public OpcUaServer getServer() {
+		return server;
+	}
+
+	public UShort getNamespaceIndex() {
+		return namespaceIndex;
+	}
+}
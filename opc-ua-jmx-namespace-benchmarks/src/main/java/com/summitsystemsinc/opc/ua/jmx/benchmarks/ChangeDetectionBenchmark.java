@@ -0,0 +1,110 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespaceConfig;
+import com.summitsystemsinc.opc.ua.jmx.types.AbstractTypeNodeFactory;
+import com.summitsystemsinc.opc.ua.jmx.types.DefaultTypes;
+import com.summitsystemsinc.opc.ua.jmx.types.TypeNodeFactory;
+import com.summitsystemsinc.opc.ua.jmx.types.ValueSlot;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Change detection of a single node for each {@link DefaultTypes} factory,
+ * with the value slots and with the boxed equals comparison, for unchanged
+ * and always changing values.
+ *
+ * @author Justin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChangeDetectionBenchmark {
+
+	@Param({"long", "double", "int", "boolean", "java.lang.String", "float", "short", "byte"})
+	public String type;
+
+	@Param({"false", "true"})
+	public boolean changing;
+
+	private UaVariableNode node;
+	private ValueSlot slot;
+	private Object[] values;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		BenchmarkEnvironment environment = new BenchmarkEnvironment(SyntheticMBean.TYPES.length, 0);
+		//Binds the shared default factories to the synthetic MBeanServer.
+		environment.newNamespace(JmxNamespaceConfig.builder()
+				.setTrackRegistrations(false)
+				.build());
+		ObjectName on = SyntheticMBean.objectName(0);
+		int index = Arrays.asList(SyntheticMBean.TYPES).indexOf(type);
+		MBeanAttributeInfo info = environment.getMBeanServer().getMBeanInfo(on).getAttributes()[index];
+
+		TypeNodeFactory factory = DefaultTypes.DEFAULT_TYPE_FACTORIES_CACHE.get(type);
+		node = factory.buildNode(SyntheticMBean.path(0), on, info);
+		slot = factory.newValueSlot();
+
+		Object current = environment.getMBeanServer().getAttribute(on, info.getName());
+		SyntheticMBean other = new SyntheticMBean(SyntheticMBean.TYPES.length, 100);
+		other.advance();
+		Object different = other.getAttribute(info.getName());
+		values = changing ? new Object[]{current, different} : new Object[]{current, current};
+		slot.update(current);
+	}
+
+	private Object nextValue() {
+		next ^= 1;
+		return values[next];
+	}
+
+	@Benchmark
+	public boolean valueSlot() {
+		return AbstractTypeNodeFactory.updateNodeValue(node, slot, nextValue(), false);
+	}
+
+	@Benchmark
+	public UaVariableNode boxedEquals() {
+		AbstractTypeNodeFactory.updateNodeValue(node, nextValue(), false);
+		return node;
+	}
+}
@@ -0,0 +1,88 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespace;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespaceConfig;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a namespace over synthetic MBean populations, eagerly or lazily.
+ *
+ * @author Justin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PopulateBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int attributes;
+
+	@Param({"false", "true"})
+	public boolean lazy;
+
+	private BenchmarkEnvironment environment;
+	private JmxNamespaceConfig config;
+	private JmxNamespace namespace;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		environment = new BenchmarkEnvironment(attributes, 0);
+		config = JmxNamespaceConfig.builder()
+				.setLazy(lazy)
+				.setTrackRegistrations(false)
+				.build();
+	}
+
+	@Benchmark
+	public JmxNamespace construct() {
+		namespace = environment.newNamespace(config);
+		return namespace;
+	}
+
+	/**
+	 * Frees the namespace URI and worker MBeans for the next invocation.
+	 */
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		if (namespace != null) {
+			namespace.shutdown();
+			namespace = null;
+		}
+	}
+}
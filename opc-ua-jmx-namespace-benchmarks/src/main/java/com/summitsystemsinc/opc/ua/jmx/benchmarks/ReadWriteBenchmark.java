@@ -0,0 +1,126 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.DiagnosticsContext;
+import com.digitalpetri.opcua.sdk.server.api.AttributeManager.ReadContext;
+import com.digitalpetri.opcua.sdk.server.api.AttributeManager.WriteContext;
+import com.digitalpetri.opcua.stack.core.AttributeIds;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
+import com.digitalpetri.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import com.digitalpetri.opcua.stack.core.types.structured.ReadValueId;
+import com.digitalpetri.opcua.stack.core.types.structured.WriteValue;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespace;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespaceConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.digitalpetri.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Throughput of batched read and write service calls straight into the
+ * namespace, without a client or the network.
+ *
+ * @author Justin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+	private static final int ATTRIBUTES = 10000;
+
+	@Param({"1", "10", "100", "1000"})
+	public int batchSize;
+
+	/**
+	 * Max age of reads in milliseconds, 0 always goes to JMX.
+	 */
+	@Param({"0", "60000"})
+	public double maxAge;
+
+	private BenchmarkEnvironment environment;
+	private JmxNamespace namespace;
+	private List<ReadValueId> reads;
+	private List<WriteValue> writes;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		environment = new BenchmarkEnvironment(ATTRIBUTES, 0);
+		namespace = environment.newNamespace(JmxNamespaceConfig.builder()
+				.setTrackRegistrations(false)
+				.build());
+
+		reads = new ArrayList<>(batchSize);
+		writes = new ArrayList<>(batchSize);
+		//Long attributes only, so every write has a valid value.
+		int step = SyntheticMBean.TYPES.length;
+		for (int i = 0; reads.size() < batchSize; i += step) {
+			int attribute = i % ATTRIBUTES;
+			NodeId nodeId = new NodeId(environment.getNamespaceIndex(),
+					SyntheticMBean.path(attribute / BenchmarkEnvironment.ATTRIBUTES_PER_BEAN)
+					+ "/" + SyntheticMBean.attributeName(attribute % BenchmarkEnvironment.ATTRIBUTES_PER_BEAN));
+			reads.add(new ReadValueId(nodeId, uint(AttributeIds.Value), null, QualifiedName.NULL_VALUE));
+			writes.add(new WriteValue(nodeId, uint(AttributeIds.Value), null,
+					new DataValue(new Variant((long) i))));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		namespace.shutdown();
+	}
+
+	@Benchmark
+	public List<DataValue> read() throws Exception {
+		ReadContext context = new ReadContext(environment.getServer(), null, new DiagnosticsContext<>());
+		namespace.read(context, maxAge, TimestampsToReturn.Both, reads);
+		return context.getFuture().get();
+	}
+
+	@Benchmark
+	public List<StatusCode> write() throws Exception {
+		WriteContext context = new WriteContext(environment.getServer(), null, new DiagnosticsContext<>());
+		namespace.write(context, writes);
+		return context.getFuture().get();
+	}
+}
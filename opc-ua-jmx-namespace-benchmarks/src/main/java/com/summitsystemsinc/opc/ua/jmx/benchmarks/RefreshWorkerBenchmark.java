@@ -0,0 +1,92 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.summitsystemsinc.opc.ua.jmx.JmxAttributeRefreshWorker;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespace;
+import com.summitsystemsinc.opc.ua.jmx.JmxNamespaceConfig;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full refresh cycle, every attribute due, against a local MBeanServer.
+ * The cycles are driven with a synthetic clock on the benchmark thread.
+ *
+ * @author Justin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RefreshWorkerBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int attributes;
+
+	/**
+	 * Percentage of attributes whose value changed since the last cycle.
+	 */
+	@Param({"0", "10", "100"})
+	public int changePercent;
+
+	private BenchmarkEnvironment environment;
+	private JmxNamespace namespace;
+	private JmxAttributeRefreshWorker worker;
+	private long now;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		environment = new BenchmarkEnvironment(attributes, changePercent);
+		namespace = environment.newNamespace(JmxNamespaceConfig.builder()
+				.setTrackRegistrations(false)
+				.build());
+		//Never started, so cycles run on the benchmark thread.
+		worker = namespace.getRefreshWorker();
+		now = 0;
+		worker.refreshDue(now);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		namespace.shutdown();
+	}
+
+	@Benchmark
+	public int refreshCycle() {
+		environment.advance();
+		now += worker.getRefreshMs();
+		return worker.refreshDue(now);
+	}
+}
@@ -0,0 +1,215 @@
+package com.summitsystemsinc.opc.ua.jmx.benchmarks;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX :: Benchmarks
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * MBean with a configurable number of attributes whose values change each
+ * time {@link #advance()} is called. Attribute types cycle through the
+ * {@link #TYPES} supported by the default type factories.
+ *
+ * @author Justin
+ */
+public class SyntheticMBean implements DynamicMBean {
+
+	public static final String DOMAIN = "bench.synthetic";
+	public static final String[] TYPES = {
+		"long", "double", "int", "boolean", "java.lang.String", "float", "short", "byte"
+	};
+
+	private final MBeanInfo info;
+	private final Object[] values;
+	private final String[] types;
+	/**
+	 * Percentage of attributes changed by each {@link #advance()}.
+	 */
+	private final int changePercent;
+	private long generation;
+
+	/**
+	 * @param attributes Number of attributes.
+	 * @param changePercent Percentage of attributes changed by each advance.
+	 */
+	public SyntheticMBean(int attributes, int changePercent) {
+		this.changePercent = changePercent;
+		this.values = new Object[attributes];
+		this.types = new String[attributes];
+		MBeanAttributeInfo[] infos = new MBeanAttributeInfo[attributes];
+		for (int i = 0; i < attributes; i++) {
+			types[i] = TYPES[i % TYPES.length];
+			values[i] = valueOf(types[i], i);
+			infos[i] = new MBeanAttributeInfo(attributeName(i), types[i],
+					"Synthetic attribute " + i, true, true, false);
+		}
+		this.info = new MBeanInfo(SyntheticMBean.class.getName(), "Synthetic MBean",
+				infos, null, null, null);
+	}
+
+	/**
+	 * Registers enough synthetic MBeans to expose the given number of
+	 * attributes.
+	 *
+	 * @param server Server to register them with.
+	 * @param attributes Total number of attributes.
+	 * @param attributesPerBean Number of attributes of each MBean.
+	 * @param changePercent Percentage of attributes changed by each advance.
+	 * @return The registered MBeans.
+	 * @throws Exception If registration fails.
+	 */
+	public static List<SyntheticMBean> registerAll(MBeanServer server, int attributes,
+			int attributesPerBean, int changePercent) throws Exception {
+		List<SyntheticMBean> beans = new ArrayList<>();
+		for (int i = 0; i * attributesPerBean < attributes; i++) {
+			int size = Math.min(attributesPerBean, attributes - i * attributesPerBean);
+			SyntheticMBean bean = new SyntheticMBean(size, changePercent);
+			server.registerMBean(bean, objectName(i));
+			beans.add(bean);
+		}
+		return beans;
+	}
+
+	public static ObjectName objectName(int index) throws Exception {
+		return new ObjectName(DOMAIN + ":type=Synthetic,name=Bean" + index);
+	}
+
+	/**
+	 * @param beanIndex Index of the MBean.
+	 * @return OPC-UA folder path of the MBean's attributes.
+	 */
+	public static String path(int beanIndex) {
+		return DOMAIN.replace('.', '/') + "/Synthetic/Bean" + beanIndex;
+	}
+
+	public static String attributeName(int index) {
+		return "Attr" + index;
+	}
+
+	private static Object valueOf(String type, long seed) {
+		switch (type) {
+			case "long":
+				return seed;
+			case "double":
+				return seed * 0.5d;
+			case "int":
+				return (int) seed;
+			case "boolean":
+				return (seed & 1) == 0;
+			case "float":
+				return seed * 0.5f;
+			case "short":
+				return (short) seed;
+			case "byte":
+				return (byte) seed;
+			default:
+				return "value-" + seed;
+		}
+	}
+
+	/**
+	 * Changes the configured share of attribute values.
+	 */
+	public synchronized void advance() {
+		generation++;
+		int changed = values.length * changePercent / 100;
+		for (int i = 0; i < changed; i++) {
+			int index = (int) ((generation * 31 + i) % values.length);
+			values[index] = valueOf(types[index], generation + index);
+		}
+	}
+
+	public int getAttributeCount() {
+		return values.length;
+	}
+
+	private int indexOf(String attribute) throws AttributeNotFoundException {
+		try {
+			int index = Integer.parseInt(attribute.substring(4));
+			if (index >= 0 && index < values.length) {
+				return index;
+			}
+		} catch (NumberFormatException | IndexOutOfBoundsException ex) {
+			//Fall through to the exception below.
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public synchronized Object getAttribute(String attribute) throws AttributeNotFoundException {
+		return values[indexOf(attribute)];
+	}
+
+	@Override
+	public synchronized void setAttribute(Attribute attribute) throws AttributeNotFoundException,
+			InvalidAttributeValueException, MBeanException, ReflectionException {
+		values[indexOf(attribute.getName())] = attribute.getValue();
+	}
+
+	@Override
+	public synchronized AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList(attributes.length);
+		for (String name : attributes) {
+			try {
+				list.add(new Attribute(name, values[indexOf(name)]));
+			} catch (AttributeNotFoundException ex) {
+				//Missing attributes are left out, as the JMX spec requires.
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized AttributeList setAttributes(AttributeList attributes) {
+		AttributeList set = new AttributeList(attributes.size());
+		for (Attribute attribute : attributes.asList()) {
+			try {
+				values[indexOf(attribute.getName())] = attribute.getValue();
+				set.add(attribute);
+			} catch (AttributeNotFoundException ex) {
+				//Left out of the result.
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+			throws MBeanException, ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return info;
+	}
+}
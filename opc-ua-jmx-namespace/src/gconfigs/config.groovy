@@ -1,14 +1,15 @@
 //TODO support characters. Variant doesnt know anything about them.
+//Columns: class prefix, JMX type(s), OPC-UA data type, ValueSlot kind.
 types=[
-	["String",["java.lang.String","String"],"String"],
-	["Byte","byte","SByte"],
-	//["Char","char","Byte"],
-	["Short","short","Int16"],
-	["Integer","int","Int32"],
-	["Long","long","Int64"],
-	["Double","double","Double"],
-	["Float","float","Float"],
-	["Boolean","boolean","Boolean"]
+	["String",["java.lang.String","String"],"String","OBJECT"],
+	["Byte","byte","SByte","LONG"],
+	//["Char","char","Byte","LONG"],
+	["Short","short","Int16","LONG"],
+	["Integer","int","Int32","LONG"],
+	["Long","long","Int64","LONG"],
+	["Double","double","Double","DOUBLE"],
+	["Float","float","Float","DOUBLE"],
+	["Boolean","boolean","Boolean","BOOLEAN"]
 ]
 prims = [
 	"boolean" : 
@@ -0,0 +1,139 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.Objects;
+import java.util.regex.Pattern;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Matches JMX attributes by an ObjectName pattern and a glob on the
+ * attribute name, such as <code>java.lang:type=MemoryPool,*</code> and
+ * <code>Usage*</code>.
+ *
+ * @author Justin
+ */
+public class AttributePattern {
+
+	private final ObjectName objectNamePattern;
+	private final String attributeGlob;
+	private final Pattern attributeRegex;
+
+	/**
+	 * @param objectNamePattern ObjectName, or ObjectName pattern, of the
+	 * MBeans to match.
+	 * @param attributeGlob Attribute names to match, <code>*</code> matching
+	 * any characters and <code>?</code> a single one. Null matches every
+	 * attribute.
+	 */
+	public AttributePattern(ObjectName objectNamePattern, String attributeGlob) {
+		this.objectNamePattern = objectNamePattern;
+		this.attributeGlob = attributeGlob == null ? "*" : attributeGlob;
+		this.attributeRegex = globToRegex(this.attributeGlob);
+	}
+
+	/**
+	 * @param objectNamePattern ObjectName pattern of the MBeans to match.
+	 * @param attributeGlob Attribute names to match, null for all.
+	 * @return The pattern.
+	 * @throws IllegalArgumentException If the ObjectName pattern is
+	 * malformed.
+	 */
+	public static AttributePattern of(String objectNamePattern, String attributeGlob) {
+		try {
+			return new AttributePattern(new ObjectName(objectNamePattern), attributeGlob);
+		} catch (MalformedObjectNameException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	private static Pattern globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	public ObjectName getObjectNamePattern() {
+		return objectNamePattern;
+	}
+
+	public String getAttributeGlob() {
+		return attributeGlob;
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @return True if the MBean matches, whatever the attribute.
+	 */
+	public boolean matches(ObjectName on) {
+		return objectNamePattern.apply(on);
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @return True if both match.
+	 */
+	public boolean matches(ObjectName on, String attributeName) {
+		return matches(on) && attributeRegex.matcher(attributeName).matches();
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 7;
+		hash = 41 * hash + Objects.hashCode(this.objectNamePattern);
+		hash = 41 * hash + Objects.hashCode(this.attributeGlob);
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		final AttributePattern other = (AttributePattern) obj;
+		return Objects.equals(this.objectNamePattern, other.objectNamePattern)
+				&& Objects.equals(this.attributeGlob, other.attributeGlob);
+	}
+
+	@Override
+	public String toString() {
+		return objectNamePattern + "/" + attributeGlob;
+	}
+}
@@ -0,0 +1,248 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.sdk.core.AccessLevel;
+import com.digitalpetri.opcua.sdk.core.Reference;
+import com.digitalpetri.opcua.sdk.server.api.UaNamespace;
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
+import com.digitalpetri.opcua.stack.core.types.enumerated.NodeClass;
+import static com.digitalpetri.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Values derived from the polled samples of one numeric attribute, published
+ * as child nodes of its variable: the rate of change per second, and the
+ * minimum, maximum and average over a sliding time window.
+ *
+ * <p>
+ * Every sample is O(1), amortized: the average keeps a running sum of the
+ * window, the minimum and maximum keep monotonic queues whose head is the
+ * answer. A sample enters and leaves each queue at most once.
+ * </p>
+ * <p>
+ * Counters are expected to only go up. A decrease is taken as a restart of
+ * the counter from zero, as when the MBean was re-registered.
+ * </p>
+ *
+ * @author Justin
+ */
+public class DerivedValues {
+
+	public static final String RATE = "Rate";
+	public static final String WINDOW_MIN = "WindowMin";
+	public static final String WINDOW_MAX = "WindowMax";
+	public static final String WINDOW_AVG = "WindowAvg";
+
+	private final long windowMs;
+	private final UaVariableNode rateNode;
+	private final UaVariableNode minNode;
+	private final UaVariableNode maxNode;
+	private final UaVariableNode avgNode;
+
+	private boolean hasLast;
+	private long lastMs;
+	private double last;
+	private final SampleQueue window = new SampleQueue();
+	private final SampleQueue minQueue = new SampleQueue();
+	private final SampleQueue maxQueue = new SampleQueue();
+	private double windowSum;
+
+	/**
+	 * Builds the derived nodes below the attribute's node and adds them to
+	 * the namespace.
+	 *
+	 * @param namespace Namespace of the attribute.
+	 * @param attributeNode Variable node of the attribute.
+	 * @param windowMs Length of the sliding window in milliseconds.
+	 */
+	public DerivedValues(UaNamespace namespace, UaVariableNode attributeNode, long windowMs) {
+		this.windowMs = Math.max(1, windowMs);
+		this.rateNode = addChild(namespace, attributeNode, RATE, "Change per second.");
+		this.minNode = addChild(namespace, attributeNode, WINDOW_MIN, "Minimum over the last " + windowMs + "ms.");
+		this.maxNode = addChild(namespace, attributeNode, WINDOW_MAX, "Maximum over the last " + windowMs + "ms.");
+		this.avgNode = addChild(namespace, attributeNode, WINDOW_AVG, "Average over the last " + windowMs + "ms.");
+	}
+
+	private static UaVariableNode addChild(UaNamespace namespace, UaVariableNode parent, String name,
+			String description) {
+		NodeId childId = new NodeId(namespace.getNamespaceIndex(),
+				parent.getNodeId().getIdentifier() + "/" + name);
+		UaVariableNode child = new UaVariableNode.UaVariableNodeBuilder(namespace)
+				.setNodeId(childId)
+				.setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_ONLY)))
+				.setBrowseName(new QualifiedName(namespace.getNamespaceIndex(), name))
+				.setDisplayName(LocalizedText.english(name))
+				.setDescription(LocalizedText.english(description))
+				.setDataType(Identifiers.Double)
+				.setTypeDefinition(Identifiers.BaseDataVariableType)
+				.build();
+		child.setValue(new DataValue(new StatusCode(StatusCodes.Bad_WaitingForInitialData)));
+		namespace.addNode(child);
+		parent.addReference(new Reference(
+				parent.getNodeId(),
+				Identifiers.HasComponent,
+				childId.expanded(),
+				NodeClass.Variable,
+				true));
+		return child;
+	}
+
+	/**
+	 * @return The derived nodes.
+	 */
+	public List<UaVariableNode> getNodes() {
+		return Arrays.asList(rateNode, minNode, maxNode, avgNode);
+	}
+
+	public long getWindowMs() {
+		return windowMs;
+	}
+
+	/**
+	 * Takes a polled value and updates the derived nodes.
+	 *
+	 * @param timeMs Time of the poll in milliseconds.
+	 * @param value Polled value, ignored if not a number.
+	 */
+	public synchronized void sample(long timeMs, Object value) {
+		if (!(value instanceof Number)) {
+			return;
+		}
+		double v = ((Number) value).doubleValue();
+		if (Double.isNaN(v)) {
+			return;
+		}
+		if (hasLast && timeMs > lastMs) {
+			double delta = v >= last ? v - last : v;
+			setValue(rateNode, delta * 1000 / (timeMs - lastMs));
+		}
+		hasLast = true;
+		lastMs = timeMs;
+		last = v;
+
+		window.addLast(timeMs, v);
+		windowSum += v;
+		while (!minQueue.isEmpty() && minQueue.lastValue() >= v) {
+			minQueue.removeLast();
+		}
+		minQueue.addLast(timeMs, v);
+		while (!maxQueue.isEmpty() && maxQueue.lastValue() <= v) {
+			maxQueue.removeLast();
+		}
+		maxQueue.addLast(timeMs, v);
+
+		long cutoff = timeMs - windowMs;
+		while (window.firstTime() <= cutoff) {
+			windowSum -= window.firstValue();
+			window.removeFirst();
+		}
+		while (minQueue.firstTime() <= cutoff) {
+			minQueue.removeFirst();
+		}
+		while (maxQueue.firstTime() <= cutoff) {
+			maxQueue.removeFirst();
+		}
+		if (window.size() == 1) {
+			//Rounding errors of the running sum do not outlive a window.
+			windowSum = v;
+		}
+
+		setValue(minNode, minQueue.firstValue());
+		setValue(maxNode, maxQueue.firstValue());
+		setValue(avgNode, windowSum / window.size());
+	}
+
+	private static void setValue(UaVariableNode node, double value) {
+		node.setValue(new DataValue(new Variant(value)));
+	}
+
+	/**
+	 * Growable ring of timestamp/value pairs, in primitive arrays.
+	 */
+	private static final class SampleQueue {
+
+		private long[] times = new long[8];
+		private double[] values = new double[8];
+		private int head;
+		private int size;
+
+		private boolean isEmpty() {
+			return size == 0;
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private int index(int i) {
+			return (head + i) & (times.length - 1);
+		}
+
+		private void addLast(long timeMs, double value) {
+			if (size == times.length) {
+				long[] newTimes = new long[times.length * 2];
+				double[] newValues = new double[times.length * 2];
+				for (int i = 0; i < size; i++) {
+					newTimes[i] = times[index(i)];
+					newValues[i] = values[index(i)];
+				}
+				times = newTimes;
+				values = newValues;
+				head = 0;
+			}
+			int i = index(size++);
+			times[i] = timeMs;
+			values[i] = value;
+		}
+
+		private long firstTime() {
+			return times[head];
+		}
+
+		private double firstValue() {
+			return values[head];
+		}
+
+		private double lastValue() {
+			return values[index(size - 1)];
+		}
+
+		private void removeFirst() {
+			head = index(1);
+			size--;
+		}
+
+		private void removeLast() {
+			size--;
+		}
+	}
+}
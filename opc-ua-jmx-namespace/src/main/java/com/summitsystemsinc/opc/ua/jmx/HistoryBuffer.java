@@ -0,0 +1,282 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fixed-capacity ring buffer of timestamp/value samples of one numeric
+ * attribute. The oldest sample is overwritten once it is full.
+ *
+ * <p>
+ * Samples are kept in two primitive arrays, so a buffer is two objects no
+ * matter how many samples it holds and the garbage collector has nothing to
+ * trace in it. The arrays start small and double up to the capacity, so
+ * attributes that rarely change do not reserve their whole retention.
+ * Timestamps never go backwards, which keeps the buffer sorted and lets
+ * reads find their start with a binary search.
+ * </p>
+ *
+ * <p>
+ * Values of integer types are kept as longs and read back exactly, values
+ * of floating point types as the bits of a double. Aggregates are computed
+ * in doubles, so minimums, maximums and averages of long values beyond
+ * 2<sup>53</sup> are rounded.
+ * </p>
+ *
+ * @author Justin
+ */
+public class HistoryBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final Set<String> INTEGRAL_TYPES = new HashSet<>(Arrays.asList(
+			"byte", "short", "int", "long",
+			"java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long"));
+
+	private final String type;
+	private final boolean integral;
+	private final int capacity;
+	private long[] times;
+	/**
+	 * Integer values as they are, floating point values as their raw double
+	 * bits.
+	 */
+	private long[] values;
+	/**
+	 * Array index of the oldest sample.
+	 */
+	private int head;
+	private int size;
+
+	/**
+	 * @param type JMX type of the attribute, values read back are converted
+	 * to it.
+	 * @param capacity Number of samples kept.
+	 */
+	public HistoryBuffer(String type, int capacity) {
+		this.type = type;
+		this.integral = INTEGRAL_TYPES.contains(type);
+		this.capacity = Math.max(1, capacity);
+		int initial = Math.min(this.capacity, INITIAL_CAPACITY);
+		this.times = new long[initial];
+		this.values = new long[initial];
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return Number of samples held.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return Bytes taken by the sample arrays.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return (long) times.length * (Long.BYTES + Long.BYTES);
+	}
+
+	/**
+	 * Adds a sample, dropping the oldest one if full.
+	 *
+	 * @param timeMs Sample time in milliseconds. Times before the newest
+	 * sample are moved up to it.
+	 * @param value Sample value.
+	 */
+	public synchronized void add(long timeMs, Number value) {
+		long bits = integral ? value.longValue() : Double.doubleToRawLongBits(value.doubleValue());
+		if (size > 0) {
+			timeMs = Math.max(timeMs, times[index(size - 1)]);
+		}
+		if (size == times.length && times.length < capacity) {
+			grow();
+		}
+		if (size < times.length) {
+			int i = index(size);
+			times[i] = timeMs;
+			values[i] = bits;
+			size++;
+		} else {
+			times[head] = timeMs;
+			values[head] = bits;
+			head = head + 1 == times.length ? 0 : head + 1;
+		}
+	}
+
+	private void grow() {
+		int length = (int) Math.min(capacity, times.length * 2L);
+		long[] newTimes = new long[length];
+		long[] newValues = new long[length];
+		int tail = Math.min(size, times.length - head);
+		System.arraycopy(times, head, newTimes, 0, tail);
+		System.arraycopy(values, head, newValues, 0, tail);
+		System.arraycopy(times, 0, newTimes, tail, size - tail);
+		System.arraycopy(values, 0, newValues, tail, size - tail);
+		times = newTimes;
+		values = newValues;
+		head = 0;
+	}
+
+	/**
+	 * @param i Position from the oldest sample.
+	 * @return Array index of that sample.
+	 */
+	private int index(int i) {
+		int j = head + i;
+		return j >= times.length ? j - times.length : j;
+	}
+
+	private double doubleValue(int j) {
+		return integral ? values[j] : Double.longBitsToDouble(values[j]);
+	}
+
+	private Number value(int j) {
+		return integral ? (Number) values[j] : (Number) Double.longBitsToDouble(values[j]);
+	}
+
+	/**
+	 * @param timeMs Time in milliseconds.
+	 * @return Position of the first sample at or after the time.
+	 */
+	private int lowerBound(long timeMs) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[index(mid)] < timeMs) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Passes the samples from startMs, inclusive, to endMs, exclusive, oldest
+	 * first.
+	 *
+	 * @param startMs Start time in milliseconds.
+	 * @param endMs End time in milliseconds.
+	 * @param maxValues Most samples to pass, 0 for all.
+	 * @param consumer Takes each sample.
+	 * @return Number of samples passed.
+	 */
+	public synchronized int read(long startMs, long endMs, int maxValues, SampleConsumer consumer) {
+		int count = 0;
+		for (int i = lowerBound(startMs); i < size; i++) {
+			int j = index(i);
+			if (times[j] >= endMs || (maxValues > 0 && count >= maxValues)) {
+				break;
+			}
+			consumer.accept(times[j], value(j));
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Passes the samples from startMs, inclusive, back to endMs, exclusive,
+	 * newest first.
+	 *
+	 * @param startMs Start time in milliseconds, at or after endMs.
+	 * @param endMs End time in milliseconds.
+	 * @param maxValues Most samples to pass, 0 for all.
+	 * @param consumer Takes each sample.
+	 * @return Number of samples passed.
+	 */
+	public synchronized int readNewestFirst(long startMs, long endMs, int maxValues, SampleConsumer consumer) {
+		int count = 0;
+		int first = startMs == Long.MAX_VALUE ? size : lowerBound(startMs + 1);
+		for (int i = first - 1; i >= 0; i--) {
+			int j = index(i);
+			if (times[j] <= endMs || (maxValues > 0 && count >= maxValues)) {
+				break;
+			}
+			consumer.accept(times[j], value(j));
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Takes the minimum, maximum and average of the samples in consecutive
+	 * intervals, in a single pass.
+	 *
+	 * @param startMs Start of the first interval in milliseconds.
+	 * @param intervalMs Interval length in milliseconds.
+	 * @param min Minimum of each interval, NaN if it has no samples.
+	 * @param max Maximum of each interval, NaN if it has no samples.
+	 * @param avg Average of each interval, NaN if it has no samples.
+	 */
+	public synchronized void aggregate(long startMs, long intervalMs, double[] min, double[] max, double[] avg) {
+		int intervals = avg.length;
+		int[] counts = new int[intervals];
+		Arrays.fill(min, Double.NaN);
+		Arrays.fill(max, Double.NaN);
+		Arrays.fill(avg, 0);
+		long endMs = startMs + intervalMs * intervals;
+		for (int i = lowerBound(startMs); i < size; i++) {
+			int j = index(i);
+			if (times[j] >= endMs) {
+				break;
+			}
+			int k = (int) ((times[j] - startMs) / intervalMs);
+			double v = doubleValue(j);
+			if (counts[k]++ == 0) {
+				min[k] = v;
+				max[k] = v;
+			} else {
+				min[k] = Math.min(min[k], v);
+				max[k] = Math.max(max[k], v);
+			}
+			avg[k] += v;
+		}
+		for (int k = 0; k < intervals; k++) {
+			avg[k] = counts[k] == 0 ? Double.NaN : avg[k] / counts[k];
+		}
+	}
+
+	/**
+	 * Takes one sample.
+	 */
+	@FunctionalInterface
+	public static interface SampleConsumer {
+
+		/**
+		 * @param timeMs Sample time in milliseconds.
+		 * @param value A Long for integer types, a Double otherwise.
+		 */
+		void accept(long timeMs, Number value);
+	}
+}
@@ -0,0 +1,258 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.UaException;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.DateTime;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
+import com.udojava.jmx.wrapper.JMXBean;
+import com.udojava.jmx.wrapper.JMXBeanAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.ObjectName;
+
+/**
+ * Recent values of numeric attributes, for clients that want more than the
+ * current value.
+ *
+ * <p>
+ * Each historized node gets a {@link HistoryBuffer} sized by the first
+ * matching retention pattern. The refresh worker adds a sample every time a
+ * poll changes a node's value, so deadbands also thin out the history. Raw
+ * reads return the samples as the node's data type, processed reads return
+ * the minimum, maximum or average of each interval.
+ * </p>
+ *
+ * @author Justin
+ */
+@JMXBean(description = "Keeps recent values of numeric JMX attributes")
+public class HistoryStore {
+
+	/**
+	 * Most intervals one processed read may ask for.
+	 */
+	public static final int MAX_PROCESSED_INTERVALS = 10000;
+
+	private static final Set<String> NUMERIC_TYPES = new HashSet<>(Arrays.asList(
+			"byte", "short", "int", "long", "float", "double",
+			"java.lang.Byte", "java.lang.Short", "java.lang.Integer",
+			"java.lang.Long", "java.lang.Float", "java.lang.Double"));
+
+	private final Map<AttributePattern, Integer> retention;
+	private final Map<NodeId, HistoryBuffer> buffers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param retention Number of samples kept, by the attributes they apply
+	 * to. The first matching pattern wins, attributes matching none are not
+	 * historized.
+	 */
+	public HistoryStore(Map<AttributePattern, Integer> retention) {
+		this.retention = Collections.unmodifiableMap(new LinkedHashMap<>(retention));
+	}
+
+	/**
+	 * @param type JMX attribute type.
+	 * @return True if attributes of that type can be historized.
+	 */
+	public static boolean isNumeric(String type) {
+		return NUMERIC_TYPES.contains(type);
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @return Number of samples kept for the attribute, 0 if none.
+	 */
+	public int getCapacity(ObjectName on, String attributeName) {
+		for (Map.Entry<AttributePattern, Integer> e : retention.entrySet()) {
+			if (e.getKey().matches(on, attributeName)) {
+				return Math.max(0, e.getValue());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Starts keeping history of the attribute if it is numeric and matches a
+	 * retention pattern. A node that was historized before, and whose nodes
+	 * were rebuilt since, keeps its samples.
+	 *
+	 * @param jpa Polled attribute.
+	 * @param type JMX type of the attribute.
+	 * @return True if the attribute is historized.
+	 */
+	public boolean register(JmxPolledAttribute jpa, String type) {
+		int capacity = isNumeric(type) ? getCapacity(jpa.getObjectName(), jpa.getAttributeName()) : 0;
+		if (capacity == 0) {
+			return false;
+		}
+		HistoryBuffer buffer = buffers.compute(jpa.getNode().getNodeId(), (k, old) -> {
+			return old != null && old.getCapacity() == capacity && type.equals(old.getType())
+					? old : new HistoryBuffer(type, capacity);
+		});
+		jpa.setHistory(buffer);
+		jpa.getNode().setHistorizing(true);
+		return true;
+	}
+
+	/**
+	 * Drops the history of a node.
+	 *
+	 * @param nodeId Variable node id.
+	 */
+	public void remove(NodeId nodeId) {
+		buffers.remove(nodeId);
+	}
+
+	/**
+	 * Adds a sample if the attribute is historized and the value numeric.
+	 *
+	 * @param jpa Polled attribute.
+	 * @param timeMs Sample time in milliseconds.
+	 * @param value New attribute value.
+	 */
+	public void record(JmxPolledAttribute jpa, long timeMs, Object value) {
+		HistoryBuffer buffer = jpa.getHistory();
+		if (buffer != null && value instanceof Number) {
+			buffer.add(timeMs, (Number) value);
+		}
+	}
+
+	private HistoryBuffer getBuffer(NodeId nodeId) throws UaException {
+		HistoryBuffer buffer = buffers.get(nodeId);
+		if (buffer == null) {
+			throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported,
+					nodeId + " is not historized.");
+		}
+		return buffer;
+	}
+
+	/**
+	 * Reads raw samples. If startMs is after endMs the samples are returned
+	 * newest first, startMs still being inclusive and endMs exclusive.
+	 *
+	 * @param nodeId Variable node id.
+	 * @param startMs Start time in milliseconds, inclusive.
+	 * @param endMs End time in milliseconds, exclusive.
+	 * @param maxValues Most samples to return, 0 for all.
+	 * @return Samples, with their time as source and server timestamp.
+	 * @throws UaException If the node is not historized.
+	 */
+	public List<DataValue> readRaw(NodeId nodeId, long startMs, long endMs, int maxValues) throws UaException {
+		HistoryBuffer buffer = getBuffer(nodeId);
+		List<DataValue> retVal = new ArrayList<>();
+		HistoryBuffer.SampleConsumer consumer = (timeMs, value) -> {
+			retVal.add(toDataValue(timeMs, NumberConversion.convertExact(value, buffer.getType())));
+		};
+		if (startMs > endMs) {
+			buffer.readNewestFirst(startMs, endMs, maxValues, consumer);
+		} else {
+			buffer.read(startMs, endMs, maxValues, consumer);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Reads one aggregate per interval. Intervals without samples have a
+	 * Bad_NoData status.
+	 *
+	 * @param nodeId Variable node id.
+	 * @param startMs Start of the first interval in milliseconds.
+	 * @param endMs End of the last interval in milliseconds.
+	 * @param intervalMs Interval length in milliseconds.
+	 * @param aggregateType AggregateFunction_Minimum, _Maximum or _Average.
+	 * @return One value per interval, timestamped with the interval start.
+	 * @throws UaException If the node is not historized, the aggregate is not
+	 * supported or too many intervals are asked for.
+	 */
+	public List<DataValue> readProcessed(NodeId nodeId, long startMs, long endMs, long intervalMs,
+			NodeId aggregateType) throws UaException {
+		HistoryBuffer buffer = getBuffer(nodeId);
+		if (!Identifiers.AggregateFunction_Minimum.equals(aggregateType)
+				&& !Identifiers.AggregateFunction_Maximum.equals(aggregateType)
+				&& !Identifiers.AggregateFunction_Average.equals(aggregateType)) {
+			throw new UaException(StatusCodes.Bad_AggregateNotSupported,
+					aggregateType + " is not supported.");
+		}
+		if (endMs <= startMs || intervalMs <= 0) {
+			intervalMs = Math.max(1, endMs - startMs);
+		}
+		long count = (endMs - startMs + intervalMs - 1) / intervalMs;
+		if (count > MAX_PROCESSED_INTERVALS) {
+			throw new UaException(StatusCodes.Bad_InvalidArgument,
+					"More than " + MAX_PROCESSED_INTERVALS + " intervals.");
+		}
+		int intervals = (int) Math.max(1, count);
+		double[] min = new double[intervals];
+		double[] max = new double[intervals];
+		double[] avg = new double[intervals];
+		buffer.aggregate(startMs, intervalMs, min, max, avg);
+
+		List<DataValue> retVal = new ArrayList<>(intervals);
+		for (int k = 0; k < intervals; k++) {
+			long timeMs = startMs + k * intervalMs;
+			if (Double.isNaN(avg[k])) {
+				DateTime time = new DateTime(new Date(timeMs));
+				retVal.add(new DataValue(Variant.NULL_VALUE, new StatusCode(StatusCodes.Bad_NoData), time, time));
+			} else if (Identifiers.AggregateFunction_Average.equals(aggregateType)) {
+				retVal.add(toDataValue(timeMs, avg[k]));
+			} else {
+				double v = Identifiers.AggregateFunction_Minimum.equals(aggregateType) ? min[k] : max[k];
+				retVal.add(toDataValue(timeMs, NumberConversion.narrow(v, buffer.getType())));
+			}
+		}
+		return retVal;
+	}
+
+	private static DataValue toDataValue(long timeMs, Object value) {
+		DateTime time = new DateTime(new Date(timeMs));
+		return new DataValue(new Variant(value), StatusCode.GOOD, time, time);
+	}
+
+	@JMXBeanAttribute(description = "Number of nodes with history.")
+	public int getNumberHistorizedNodes() {
+		return buffers.size();
+	}
+
+	@JMXBeanAttribute(description = "Number of samples held.")
+	public long getSamples() {
+		return buffers.values().stream().mapToLong(HistoryBuffer::size).sum();
+	}
+
+	@JMXBeanAttribute(description = "Bytes taken by sample arrays.")
+	public long getAllocatedBytes() {
+		return buffers.values().stream().mapToLong(HistoryBuffer::getAllocatedBytes).sum();
+	}
+}
@@ -1,25 +1,50 @@
 package com.summitsystemsinc.opc.ua.jmx;
 
 import com.digitalpetri.opcua.sdk.server.model.UaNode;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UInteger;
 import com.summitsystemsinc.opc.ua.jmx.types.AbstractTypeNodeFactory;
 import com.summitsystemsinc.opc.ua.jmx.types.TypeNodeFactory;
 import com.udojava.jmx.wrapper.JMXBean;
 import com.udojava.jmx.wrapper.JMXBeanAttribute;
 import com.udojava.jmx.wrapper.JMXBeanOperation;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanException;
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.RuntimeMBeanException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,31 +81,145 @@ public class JmxAttributeRefreshWorker implements Runnable,
 			= LoggerFactory.getLogger(JmxAttributeRefreshWorker.class);
 
 	public static final int DEFAULT_REFRESH_MS = 1000;
+	/**
+	 * Default resolution of the sampling scheduler.
+	 */
+	public static final int DEFAULT_TICK_MS = 100;
+	public static final int DEFAULT_REFRESH_THREADS = 1;
+	/**
+	 * Default number of partitions that may wait for a pool thread.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	/**
+	 * Time an idle fetch thread is kept, in milliseconds.
+	 */
+	private static final long DEFAULT_FETCH_KEEP_ALIVE_MS = 60000;
+	/**
+	 * Default delay before an unavailable attribute is first read again.
+	 */
+	public static final int DEFAULT_PROBE_MIN_MS = 1000;
+	/**
+	 * Default longest delay between reads of an unavailable attribute.
+	 */
+	public static final int DEFAULT_PROBE_MAX_MS = 60000;
+	/**
+	 * Default number of MBeans listed by {@link #getTopObjectNames()}.
+	 */
+	public static final int DEFAULT_TOP_OBJECT_NAMES = 10;
+	/**
+	 * Default longest interval adaptive polling backs off to.
+	 */
+	public static final int DEFAULT_ADAPTIVE_MAX_MS = 60000;
+	/**
+	 * Default number of unchanged polls in a row before adaptive polling
+	 * doubles an attribute's interval.
+	 */
+	public static final int DEFAULT_ADAPTIVE_STABLE_POLLS = 3;
 
-	private static final ScheduledExecutorService SCHEDULED_THREAD
-			= Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
-				Thread t = new Thread(r, "JMX-UA Refresh");
-				t.setDaemon(true);
-				return t;
-			});
+	private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
 
 	/**
 	 * JMX reported these values were unavailable.
 	 */
-	private final Set<UaNode> unavailableNodes = new HashSet<>();
+	private final Set<UaNode> unavailableNodes = ConcurrentHashMap.newKeySet();
+	/**
+	 * When each unavailable node is read again. The delay doubles with every
+	 * failed probe, up to probeMaxMs, and is jittered so nodes that failed
+	 * together are not probed together.
+	 */
+	private final Map<NodeId, Probe> probes = new ConcurrentHashMap<>();
+	private volatile int probeMinMs = DEFAULT_PROBE_MIN_MS;
+	private volatile int probeMaxMs = DEFAULT_PROBE_MAX_MS;
+	private final AtomicLong recoveredNodes = new AtomicLong();
+	/**
+	 * Duration of refresh cycles that read anything, in microseconds.
+	 */
+	private final LatencyHistogram cycleMicros = new LatencyHistogram();
+	/**
+	 * Cycles that ran past the next due deadline, delaying attributes due
+	 * then.
+	 */
+	private final AtomicLong cycleOverruns = new AtomicLong();
+	/**
+	 * Time spent reading each MBean, for finding the expensive ones.
+	 */
+	private final Map<ObjectName, ReadCost> readCosts = new ConcurrentHashMap<>();
+	private volatile int topObjectNamesSize = DEFAULT_TOP_OBJECT_NAMES;
 
 	private final Set<JmxPolledAttribute> polledAttributes;
+	private final Map<NodeId, JmxPolledAttribute> attributesByNodeId;
+	/**
+	 * Attributes by the ids of their derived nodes, so monitoring a derived
+	 * node polls its attribute.
+	 */
+	private final Map<NodeId, JmxPolledAttribute> attributesByDerivedNodeId = new ConcurrentHashMap<>();
+	/**
+	 * Decides which attributes are read on each tick, grouped by MBean so each
+	 * MBean can be read with a single getAttributes call.
+	 */
+	private final SamplingScheduler scheduler;
 	private MBeanServerConnection mBeanServerConnection;
-	private int refreshMs;
+	/**
+	 * Sampling interval of attributes no DataItem asked for a specific one.
+	 */
+	private volatile int refreshMs;
+	/**
+	 * When true only subscribed attributes are polled, everything else is read
+	 * on demand.
+	 */
+	private volatile boolean subscriptionDriven;
+	/**
+	 * When true attributes that keep the same value are polled less often.
+	 */
+	private volatile boolean adaptive;
+	private volatile int adaptiveMaxMs = DEFAULT_ADAPTIVE_MAX_MS;
+	private volatile int adaptiveStablePolls = DEFAULT_ADAPTIVE_STABLE_POLLS;
+	/**
+	 * Takes a sample of every polled value change, null to keep no history.
+	 */
+	private volatile HistoryStore historyStore;
+	/**
+	 * Number of partitions the due attributes are split into each cycle. One
+	 * reads everything on the tick thread.
+	 */
+	private volatile int refreshThreads = DEFAULT_REFRESH_THREADS;
+	private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	/**
+	 * Read partitions on virtual threads, when the JVM supports them.
+	 */
+	private volatile boolean virtualThreads;
+	private final String threadName = "JMX-UA Refresh-" + WORKER_COUNT.incrementAndGet();
+	private final AtomicInteger activeTasks = new AtomicInteger();
+	private ScheduledExecutorService tickExecutor;
+	/**
+	 * Probes unavailable nodes, so slow probes do not delay the refresh cycle.
+	 */
+	private ScheduledExecutorService probeExecutor;
+	private ExecutorService readExecutor;
+	/**
+	 * Reads attributes fetched on demand, so a client read never does a JMX
+	 * round trip on the thread that asked. Created on first use, its idle
+	 * threads time out.
+	 */
+	private ThreadPoolExecutor fetchExecutor;
+	private final AtomicLong rejectedFetches = new AtomicLong();
 	private ScheduledFuture future;
+	/**
+	 * MBeans due on the current tick, only touched by the tick thread.
+	 */
+	private final List<ObjectName> dueObjectNames = new ArrayList<>();
+	private final List<Collection<JmxPolledAttribute>> dueAttributes = new ArrayList<>();
 
 	public JmxAttributeRefreshWorker() {
 		this(DEFAULT_REFRESH_MS);
 	}
 
 	public JmxAttributeRefreshWorker(int refreshMs) {
-		this.polledAttributes = new HashSet<>();
+		this.polledAttributes = ConcurrentHashMap.newKeySet();
+		this.attributesByNodeId = new ConcurrentHashMap<>();
 		this.refreshMs = refreshMs;
+		this.scheduler = new SamplingScheduler(
+				Math.min(DEFAULT_TICK_MS, refreshMs), this::getEffectiveSamplingMs);
 	}
 
 	public JmxAttributeRefreshWorker(int refreshMs, MBeanServerConnection mbsc) {
@@ -88,25 +227,353 @@ public class JmxAttributeRefreshWorker implements Runnable,
 		this.mBeanServerConnection = mbsc;
 	}
 
+	/**
+	 * @param refreshMs Default sampling interval.
+	 * @param mbsc Connection to read attributes from.
+	 * @param refreshThreads Number of threads reading attributes concurrently.
+	 * @param virtualThreads Use virtual threads instead of a platform thread
+	 * pool, if the JVM supports them.
+	 */
+	public JmxAttributeRefreshWorker(int refreshMs, MBeanServerConnection mbsc,
+			int refreshThreads, boolean virtualThreads) {
+		this(refreshMs, mbsc);
+		this.refreshThreads = Math.max(1, refreshThreads);
+		this.virtualThreads = virtualThreads;
+	}
+
 	public void addPolledAttribute(JmxPolledAttribute polledAttribute) {
-		this.polledAttributes.add(polledAttribute);
+		if (this.polledAttributes.add(polledAttribute)) {
+			this.attributesByNodeId.put(polledAttribute.getNode().getNodeId(), polledAttribute);
+			if (polledAttribute.getDerived() != null) {
+				polledAttribute.getDerived().getNodes().stream().forEach((n) -> {
+					attributesByDerivedNodeId.put(n.getNodeId(), polledAttribute);
+				});
+			}
+			this.scheduler.schedule(polledAttribute);
+		}
 	}
 
 	public void removePolledAttribute(JmxPolledAttribute polledAttribute) {
-		this.polledAttributes.remove(polledAttribute);
+		if (this.polledAttributes.remove(polledAttribute)) {
+			this.attributesByNodeId.remove(polledAttribute.getNode().getNodeId());
+			if (polledAttribute.getDerived() != null) {
+				polledAttribute.getDerived().getNodes().stream().forEach((n) -> {
+					attributesByDerivedNodeId.remove(n.getNodeId());
+				});
+			}
+			this.scheduler.schedule(polledAttribute);
+			ObjectName on = polledAttribute.getObjectName();
+			if (this.polledAttributes.stream().noneMatch((jpa) -> jpa.getObjectName().equals(on))) {
+				this.readCosts.remove(on);
+			}
+			nodeAvailable(polledAttribute.getNode());
+		}
+	}
+
+	/**
+	 * @param nodeId Variable node id.
+	 * @return The polled attribute backing the node, or null if the node is not
+	 * backed by a JMX attribute.
+	 */
+	public JmxPolledAttribute getPolledAttribute(NodeId nodeId) {
+		return attributesByNodeId.get(nodeId);
+	}
+
+	/**
+	 * Adds or updates a DataItem monitoring the node. The attribute is polled
+	 * at the fastest interval any of its DataItems requested.
+	 *
+	 * @param nodeId Monitored node.
+	 * @param itemId DataItem id.
+	 * @param samplingInterval Sampling interval requested by the DataItem, in
+	 * milliseconds.
+	 */
+	public void subscribe(NodeId nodeId, UInteger itemId, double samplingInterval) {
+		JmxPolledAttribute jpa = getSubscribedAttribute(nodeId);
+		if (jpa != null) {
+			jpa.putSubscription(itemId, Math.max(1L, (long) Math.ceil(samplingInterval)));
+			scheduler.schedule(jpa);
+		}
+	}
+
+	/**
+	 * Removes a DataItem monitoring the node.
+	 *
+	 * @param nodeId Monitored node.
+	 * @param itemId DataItem id.
+	 */
+	public void unsubscribe(NodeId nodeId, UInteger itemId) {
+		JmxPolledAttribute jpa = getSubscribedAttribute(nodeId);
+		if (jpa != null && jpa.removeSubscription(itemId)) {
+			scheduler.schedule(jpa);
+		}
+	}
+
+	/**
+	 * @param nodeId Attribute node or one of its derived nodes.
+	 * @return The attribute to poll for it, or null.
+	 */
+	private JmxPolledAttribute getSubscribedAttribute(NodeId nodeId) {
+		JmxPolledAttribute jpa = attributesByNodeId.get(nodeId);
+		return jpa != null ? jpa : attributesByDerivedNodeId.get(nodeId);
+	}
+
+	/**
+	 * With adaptive polling, attributes no DataItem monitors are read less
+	 * often while their value does not change, up to adaptiveMaxMs. Monitored
+	 * attributes are never read slower than their DataItems asked for.
+	 *
+	 * @param jpa Polled attribute.
+	 * @return Interval, in milliseconds, the refresh cycle should read this
+	 * attribute at, or 0 if it should not be polled.
+	 */
+	public long getEffectiveSamplingMs(JmxPolledAttribute jpa) {
+		if (!polledAttributes.contains(jpa)) {
+			return 0;
+		}
+		long requested = jpa.getRequestedSamplingMs();
+		if (requested > 0) {
+			return requested;
+		}
+		if (subscriptionDriven) {
+			return 0;
+		}
+		int shift = jpa.getBackoffShift();
+		if (!adaptive || shift == 0) {
+			return refreshMs;
+		}
+		return Math.max(refreshMs, Math.min(adaptiveMaxMs, (long) refreshMs << shift));
+	}
+
+	/**
+	 * Updates the node with a polled value, records changes in the history
+	 * store, updates derived values and adapts the attribute's polling interval to whether the value
+	 * changed: a change brings it straight back to the base interval,
+	 * adaptiveStablePolls unchanged polls in a row double it.
+	 *
+	 * @param jpa Polled attribute.
+	 * @param value Value read from JMX.
+	 */
+	private void polled(JmxPolledAttribute jpa, Object value) {
+		boolean changed = jpa.updateValue(value);
+		long nowMs = System.currentTimeMillis();
+		HistoryStore history = historyStore;
+		if (changed && history != null) {
+			history.record(jpa, nowMs, value);
+		}
+		DerivedValues derived = jpa.getDerived();
+		if (derived != null) {
+			derived.sample(nowMs, value);
+		}
+		if (!adaptive) {
+			return;
+		}
+		if (changed) {
+			jpa.resetUnchangedPolls();
+			if (jpa.getBackoffShift() > 0) {
+				jpa.setBackoffShift(0);
+				scheduler.schedule(jpa);
+			}
+		} else if (jpa.incrementUnchangedPolls() >= adaptiveStablePolls) {
+			jpa.resetUnchangedPolls();
+			int shift = jpa.getBackoffShift();
+			if (jpa.getRequestedSamplingMs() == 0 && shift < 30
+					&& ((long) refreshMs << shift) < adaptiveMaxMs) {
+				jpa.setBackoffShift(shift + 1);
+				scheduler.schedule(jpa);
+			}
+		}
+	}
+
+	/**
+	 * @return Store sampling polled value changes, or null.
+	 */
+	public HistoryStore getHistoryStore() {
+		return historyStore;
+	}
+
+	/**
+	 * @param historyStore Store sampling polled value changes, null for none.
+	 */
+	public void setHistoryStore(HistoryStore historyStore) {
+		this.historyStore = historyStore;
+	}
+
+	/**
+	 * @param jpa Polled attribute.
+	 * @return True if the refresh cycle keeps this attribute up to date.
+	 */
+	public boolean isActivelyPolled(JmxPolledAttribute jpa) {
+		return getEffectiveSamplingMs(jpa) > 0;
+	}
+
+	private void rescheduleAll() {
+		polledAttributes.stream().forEach(scheduler::schedule);
+	}
+
+	/**
+	 * Decides if a read must go to JMX instead of using the node's value.
+	 *
+	 * <p>
+	 * Attributes monitored by a DataItem are also considered fresh for their
+	 * sampling interval, because the SDK samples them with a maxAge of 0 and
+	 * the refresh cycle already keeps them that fresh.
+	 * </p>
+	 *
+	 * @param jpa Polled attribute.
+	 * @param maxAge Maximum age, in milliseconds, the reader accepts.
+	 * {@link Integer#MAX_VALUE} or more accepts any cached value.
+	 * @param nowMs Current time in milliseconds.
+	 * @return True if the attribute must be fetched.
+	 */
+	public boolean isStale(JmxPolledAttribute jpa, double maxAge, long nowMs) {
+		long fetchedMs = jpa.getFetchedMs();
+		if (fetchedMs == 0) {
+			return true;
+		}
+		if (maxAge >= Integer.MAX_VALUE) {
+			return false;
+		}
+		long allowedMs = Math.max(0, (long) maxAge);
+		if (jpa.getSubscriptionCount() > 0) {
+			allowedMs = Math.max(allowedMs, getEffectiveSamplingMs(jpa));
+		}
+		return nowMs - fetchedMs > allowedMs;
+	}
+
+	/**
+	 * Reads the given attributes now, outside of the refresh cycle, with one
+	 * getAttributes call per MBean on this worker's fetch threads. Attributes
+	 * another caller is already fetching are not read again, the returned
+	 * future waits for that fetch instead.
+	 *
+	 * @param attributes Attributes to read.
+	 * @return Completes once every attribute's node holds the fetched value,
+	 * or exceptionally if the fetch threads are too busy to read them.
+	 */
+	public CompletableFuture<Void> fetch(Collection<JmxPolledAttribute> attributes) {
+		Set<CompletableFuture<Void>> waits = new LinkedHashSet<>();
+		Map<ObjectName, CompletableFuture<Void>> fetches = new HashMap<>();
+		Map<ObjectName, List<JmxPolledAttribute>> toRead = new HashMap<>();
+		attributes.stream().forEach((jpa) -> {
+			CompletableFuture<Void> fetch = fetches.computeIfAbsent(
+					jpa.getObjectName(), (on) -> new CompletableFuture<>());
+			if (jpa.startFetch(fetch)) {
+				toRead.computeIfAbsent(jpa.getObjectName(), (on) -> new ArrayList<>()).add(jpa);
+				waits.add(fetch);
+			} else {
+				CompletableFuture<Void> inFlight = jpa.getInFlightFetch();
+				if (inFlight != null) {
+					waits.add(inFlight);
+				}
+			}
+		});
+
+		ExecutorService executor = getFetchExecutor();
+		toRead.entrySet().stream().forEach((e) -> {
+			CompletableFuture<Void> fetch = fetches.get(e.getKey());
+			try {
+				executor.execute(() -> {
+					try {
+						fetchObjectName(e.getKey(), e.getValue());
+					} finally {
+						e.getValue().stream().forEach((jpa) -> jpa.endFetch(fetch));
+						fetch.complete(null);
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				rejectedFetches.incrementAndGet();
+				e.getValue().stream().forEach((jpa) -> jpa.endFetch(fetch));
+				fetch.completeExceptionally(ex);
+			}
+		});
+		return CompletableFuture.allOf(waits.toArray(new CompletableFuture<?>[waits.size()]));
+	}
+
+	private synchronized ExecutorService getFetchExecutor() {
+		if (fetchExecutor == null || fetchExecutor.isShutdown()) {
+			fetchExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads,
+					DEFAULT_FETCH_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+					daemonThreadFactory(threadName + "-Fetch"));
+			fetchExecutor.allowCoreThreadTimeOut(true);
+		}
+		return fetchExecutor;
+	}
+
+	/**
+	 * Reads the given attributes now and waits for them.
+	 *
+	 * @param attributes Attributes to read.
+	 * @see #fetch(java.util.Collection)
+	 */
+	public void refresh(Collection<JmxPolledAttribute> attributes) {
+		fetch(attributes).join();
 	}
 
 	@JMXBeanOperation(name = "Start Refresh", description = "Start the "
 			+ "refresh thread. Only works if not running.")
-	public void start() {
+	public synchronized void start() {
 		if (future == null || future.isDone() || future.isCancelled()) {
-			LOGGER.info("Starting JMX-UA Refresh task with {}ms delay.", getRefreshMs());
-			future = SCHEDULED_THREAD.scheduleWithFixedDelay(this,
-					0, getRefreshMs(),
+			LOGGER.info("Starting JMX-UA Refresh task with {}ms default interval, "
+					+ "{}ms tick and {} thread(s).",
+					getRefreshMs(), getTickMs(), getRefreshThreads());
+			if (tickExecutor == null || tickExecutor.isShutdown()) {
+				tickExecutor = Executors.newSingleThreadScheduledExecutor(
+						daemonThreadFactory(threadName));
+			}
+			if (refreshThreads > 1 && (readExecutor == null || readExecutor.isShutdown())) {
+				readExecutor = newReadExecutor();
+			}
+			future = tickExecutor.scheduleWithFixedDelay(this,
+					0, getTickMs(),
 					TimeUnit.MILLISECONDS);
+			if (probeExecutor == null || probeExecutor.isShutdown()) {
+				probeExecutor = Executors.newSingleThreadScheduledExecutor(
+						daemonThreadFactory(threadName + "-Probe"));
+				probeExecutor.scheduleWithFixedDelay(
+						() -> probeUnavailable(System.currentTimeMillis()),
+						getTickMs(), getTickMs(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private ExecutorService newReadExecutor() {
+		if (virtualThreads) {
+			ExecutorService executor = newVirtualThreadExecutor();
+			if (executor != null) {
+				return executor;
+			}
+			LOGGER.warn("Virtual threads are not supported by this JVM, "
+					+ "using a pool of {} threads.", refreshThreads);
+		}
+		return new ThreadPoolExecutor(refreshThreads, refreshThreads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+				daemonThreadFactory(threadName + "-Reader"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			LOGGER.debug("Could not create a virtual thread executor.", ex);
+			return null;
 		}
 	}
 
+	private static ThreadFactory daemonThreadFactory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return (Runnable r) -> {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
 	@JMXBeanAttribute(description = "Number of JMX attributes that threw a Java"
 			+ "Exception when we tried to read them.")
 	public int getNumberUnavailableNodes() {
@@ -127,37 +594,263 @@ public class JmxAttributeRefreshWorker implements Runnable,
 
 	@JMXBeanOperation(name = "Stop Refresh", description = "Stop the "
 			+ "refresh thread.")
-	public void stop() {
+	public synchronized void stop() {
 		if (future != null) {
 			LOGGER.info("Stopping JMX-UA task.");
 			future.cancel(true);
 		}
+		if (tickExecutor != null) {
+			tickExecutor.shutdownNow();
+			tickExecutor = null;
+		}
+		if (readExecutor != null) {
+			readExecutor.shutdownNow();
+			readExecutor = null;
+		}
+		if (probeExecutor != null) {
+			probeExecutor.shutdownNow();
+			probeExecutor = null;
+		}
+		if (fetchExecutor != null) {
+			fetchExecutor.shutdownNow();
+			fetchExecutor = null;
+		}
+	}
+
+	private synchronized void restartIfRunning() {
+		if (future != null && !future.isDone()) {
+			stop();
+			start();
+		}
 	}
 
 	@Override
 	public void run() {
-		LOGGER.debug("Refreshing {} JMX Attributes to nodes with {} unavailable.", 
-				polledAttributes.size(), unavailableNodes.size());
-		long startTime = System.currentTimeMillis();
-
-		Iterator<JmxPolledAttribute> iter = polledAttributes.iterator();
-		while (iter.hasNext()) {
-			JmxPolledAttribute jpa = iter.next();
-			if (!unavailableNodes.contains(jpa.getNode())) {
+		refreshDue(System.currentTimeMillis());
+	}
+
+	/**
+	 * Runs one refresh cycle as if it were the given time. Only one thread may
+	 * call this at a time, normally the refresh thread.
+	 *
+	 * @param startTime Time of the cycle in milliseconds.
+	 * @return Number of attributes that were due.
+	 */
+	public int refreshDue(long startTime) {
+		long cycleStart = System.currentTimeMillis();
+		long cycleStartNanos = System.nanoTime();
+		dueObjectNames.clear();
+		dueAttributes.clear();
+		int count = scheduler.tick(startTime, (on, group) -> {
+			dueObjectNames.add(on);
+			dueAttributes.add(group);
+		});
+		long nextDueMs = scheduler.getNextDueMs();
+
+		ExecutorService executor = readExecutor;
+		int partitions = Math.min(refreshThreads, dueObjectNames.size());
+		if (executor == null || partitions <= 1) {
+			refreshPartition(0, 1);
+		} else {
+			List<Future<?>> futures = new ArrayList<>(partitions);
+			for (int p = 0; p < partitions; p++) {
+				final int partition = p;
+				futures.add(executor.submit(() -> refreshPartition(partition, partitions)));
+			}
+			for (Future<?> f : futures) {
 				try {
-					AbstractTypeNodeFactory.setNodeValue(jpa.getObjectName(), jpa.getAttributeName(), jpa.getNode(), mBeanServerConnection, false);
-				} catch (InstanceNotFoundException | 
-						MBeanException | 
-						AttributeNotFoundException | 
-						ReflectionException | 
-						IOException ex) {
-					LOGGER.warn(ex.getMessage(), ex);
+					f.get();
+				} catch (ExecutionException ex) {
+					LOGGER.warn(ex.getMessage(), ex.getCause());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					futures.stream().forEach((pending) -> pending.cancel(true));
+					return count;
+				}
+			}
+		}
+
+		if (count > 0) {
+			long micros = (System.nanoTime() - cycleStartNanos) / 1000;
+			cycleMicros.record(micros);
+			if (nextDueMs != Long.MAX_VALUE && startTime + micros / 1000 > nextDueMs) {
+				cycleOverruns.incrementAndGet();
+			}
+			long endTime = System.currentTimeMillis();
+			LOGGER.debug("Refreshed {} of {} JMX Attributes with {} unavailable.  Took {}ms",
+					count, polledAttributes.size(), unavailableNodes.size(), endTime - cycleStart);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads every due MBean whose index falls in the given stripe.
+	 *
+	 * @param partition Index of this partition.
+	 * @param partitions Number of partitions.
+	 */
+	private void refreshPartition(int partition, int partitions) {
+		activeTasks.incrementAndGet();
+		try {
+			for (int i = partition; i < dueObjectNames.size(); i += partitions) {
+				refreshObjectName(dueObjectNames.get(i), dueAttributes.get(i));
+			}
+		} finally {
+			activeTasks.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Reads every available attribute of one MBean with a single
+	 * getAttributes call. Attributes are only read one by one if the bulk
+	 * read fails, or for attributes the bulk read did not return. A
+	 * RuntimeException is logged and swallowed, so one failing MBean does
+	 * not end the refresh cycle or cancel the scheduled polling.
+	 *
+	 * @param on MBean to read.
+	 * @param attributes Polled attributes of that MBean.
+	 */
+	private void refreshObjectName(ObjectName on, Collection<JmxPolledAttribute> attributes) {
+		long startNanos = System.nanoTime();
+		try {
+			fetchObjectName(on, attributes);
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Could not refresh the attributes of {}.", on, ex);
+		} finally {
+			readCosts.computeIfAbsent(on, (k) -> new ReadCost())
+					.add(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Reads the attributes of one MBean without counting the time against
+	 * the refresh cycle.
+	 *
+	 * @param on MBean to read.
+	 * @param attributes Polled attributes of that MBean.
+	 */
+	private void fetchObjectName(ObjectName on, Collection<JmxPolledAttribute> attributes) {
+		long fetchedMs = System.currentTimeMillis();
+		try {
+			readObjectName(on, attributes);
+		} finally {
+			//Unavailable attributes count as fetched, there is nothing newer to get.
+			attributes.stream().forEach((jpa) -> jpa.setFetchedMs(fetchedMs));
+		}
+	}
+
+	private void readObjectName(ObjectName on, Collection<JmxPolledAttribute> attributes) {
+		List<JmxPolledAttribute> available = new ArrayList<>(attributes.size());
+		attributes.stream()
+				.filter((jpa) -> !unavailableNodes.contains(jpa.getNode()))
+				.forEach(available::add);
+		if (available.isEmpty()) {
+			return;
+		}
+
+		String[] names = new String[available.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = available.get(i).getAttributeName();
+		}
+
+		AttributeList values;
+		try {
+			values = mBeanServerConnection.getAttributes(on, names);
+		} catch (InstanceNotFoundException |
+				ReflectionException |
+				IOException ex) {
+			LOGGER.debug("Bulk read of {} failed, reading attributes individually.", on, ex);
+			available.stream().forEach(this::refreshAttribute);
+			return;
+		}
+
+		Map<String, Object> valuesByName = new HashMap<>(values.size() * 2);
+		for (Attribute attribute : values.asList()) {
+			valuesByName.put(attribute.getName(), attribute.getValue());
+		}
+		available.stream().forEach((jpa) -> {
+			if (valuesByName.containsKey(jpa.getAttributeName())) {
+				polled(jpa, valuesByName.get(jpa.getAttributeName()));
+			} else {
+				refreshAttribute(jpa);
+			}
+		});
+	}
+
+	private void refreshAttribute(JmxPolledAttribute jpa) {
+		try {
+			Object value = mBeanServerConnection.getAttribute(jpa.getObjectName(), jpa.getAttributeName());
+			polled(jpa, value);
+		} catch (RuntimeMBeanException ex) {
+			LOGGER.warn("{} of {} is unavailable, probing it with backoff: {}",
+					jpa.getAttributeName(), jpa.getObjectName(), ex.getMessage());
+			jpa.setUnavailable(new StatusCode(AbstractTypeNodeFactory.UNAVAILABLE_STATUS));
+			nodeUnavailable(jpa.getNode());
+		} catch (InstanceNotFoundException | 
+				MBeanException | 
+				AttributeNotFoundException | 
+				ReflectionException | 
+				IOException ex) {
+			LOGGER.warn(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Reads every unavailable attribute whose probe is due. Attributes that
+	 * read fine again get their value back and are polled as usual, the
+	 * others are probed again after a longer delay.
+	 *
+	 * @param nowMs Current time in milliseconds.
+	 * @return Number of attributes that recovered.
+	 */
+	public int probeUnavailable(long nowMs) {
+		int recovered = 0;
+		for (Map.Entry<NodeId, Probe> e : probes.entrySet()) {
+			Probe probe = e.getValue();
+			if (probe.nextProbeMs > nowMs) {
+				continue;
+			}
+			JmxPolledAttribute jpa = attributesByNodeId.get(e.getKey());
+			if (jpa == null) {
+				//Built but not polled (yet), look again later.
+				probe.nextProbeMs = nowMs + getProbeDelayMs(++probe.attempts);
+				continue;
+			}
+			try {
+				Object value = mBeanServerConnection.getAttribute(
+						jpa.getObjectName(), jpa.getAttributeName());
+				if (probes.remove(e.getKey(), probe)) {
+					unavailableNodes.remove(jpa.getNode());
+					jpa.resetValue(value);
+					jpa.setFetchedMs(nowMs);
+					recoveredNodes.incrementAndGet();
+					recovered++;
+					LOGGER.info("{} of {} is available again after {} probe(s).",
+							jpa.getAttributeName(), jpa.getObjectName(), probe.attempts + 1);
 				}
+			} catch (InstanceNotFoundException |
+					MBeanException |
+					AttributeNotFoundException |
+					ReflectionException |
+					RuntimeMBeanException |
+					IOException ex) {
+				probe.nextProbeMs = nowMs + getProbeDelayMs(++probe.attempts);
+				LOGGER.debug("{} of {} is still unavailable, probing again in {}ms.",
+						jpa.getAttributeName(), jpa.getObjectName(), probe.nextProbeMs - nowMs);
 			}
 		}
+		return recovered;
+	}
 
-		long endTime = System.currentTimeMillis();
-		LOGGER.debug("Refreshing complete.  Took {}ms", endTime - startTime);
+	/**
+	 * @param attempts Number of failed probes so far.
+	 * @return Delay before the next probe, between half and all of the
+	 * exponential backoff.
+	 */
+	private long getProbeDelayMs(int attempts) {
+		long delay = Math.min(probeMaxMs, (long) probeMinMs << Math.min(attempts, 30));
+		long half = Math.max(1, delay / 2);
+		return half + ThreadLocalRandom.current().nextLong(half);
 	}
 
 	/**
@@ -172,11 +865,176 @@ public class JmxAttributeRefreshWorker implements Runnable,
 	 * @param refreshMs the refreshMs to set
 	 */
 	@JMXBeanAttribute(description
-			= "Interval this refresh worker is triggered, in milliseconds.")
+			= "Interval attributes are refreshed at unless a DataItem requested "
+			+ "another sampling interval, in milliseconds.")
 	public void setRefreshMs(int refreshMs) {
-		stop();
 		this.refreshMs = refreshMs;
-		start();
+		rescheduleAll();
+	}
+
+	@JMXBeanAttribute(description = "Resolution of the sampling scheduler, in "
+			+ "milliseconds. Sampling intervals are rounded up to a multiple of it.")
+	public int getTickMs() {
+		return scheduler.getTickMs();
+	}
+
+	@JMXBeanAttribute(description = "Number of threads reading JMX attributes "
+			+ "concurrently each cycle.")
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+
+	/**
+	 * @param refreshThreads Number of threads reading JMX attributes
+	 * concurrently, restarts the refresh task if it is running.
+	 */
+	@JMXBeanAttribute(description = "Number of threads reading JMX attributes "
+			+ "concurrently each cycle.")
+	public void setRefreshThreads(int refreshThreads) {
+		this.refreshThreads = Math.max(1, refreshThreads);
+		restartIfRunning();
+	}
+
+	@JMXBeanAttribute(description = "Read attributes on virtual threads when "
+			+ "the JVM supports them.")
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	@JMXBeanAttribute(description = "Read attributes on virtual threads when "
+			+ "the JVM supports them.")
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		restartIfRunning();
+	}
+
+	@JMXBeanAttribute(description = "Number of partitions that may wait for a "
+			+ "pool thread before the tick thread reads them itself.")
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@JMXBeanAttribute(description = "Number of partitions that may wait for a "
+			+ "pool thread before the tick thread reads them itself.")
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		restartIfRunning();
+	}
+
+	@JMXBeanAttribute(description = "Number of on-demand reads answered from "
+			+ "cached values because the fetch threads were too busy.")
+	public long getRejectedFetches() {
+		return rejectedFetches.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of threads currently in the reader "
+			+ "pool.")
+	public int getPoolSize() {
+		ExecutorService executor = readExecutor;
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getPoolSize();
+		}
+		return executor == null ? 0 : refreshThreads;
+	}
+
+	@JMXBeanAttribute(description = "Number of partitions waiting for a reader "
+			+ "thread.")
+	public int getQueueDepth() {
+		ExecutorService executor = readExecutor;
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		return 0;
+	}
+
+	@JMXBeanAttribute(description = "Number of partitions currently being read.")
+	public int getActiveTasks() {
+		return activeTasks.get();
+	}
+
+	@JMXBeanAttribute(description = "Sampling intervals in use, with the number "
+			+ "of attributes polled at each.")
+	public String[] getSamplingIntervals() {
+		return scheduler.getIntervalSizes().entrySet().stream()
+				.map((e) -> e.getKey() + "ms: " + e.getValue())
+				.toArray(String[]::new);
+	}
+
+	/**
+	 * @return True if only subscribed attributes are polled.
+	 */
+	@JMXBeanAttribute
+	public boolean isSubscriptionDriven() {
+		return subscriptionDriven;
+	}
+
+	/**
+	 * @param subscriptionDriven True to only poll attributes with active
+	 * DataItems, false to poll every attribute.
+	 */
+	@JMXBeanAttribute(description = "Only poll attributes that OPC-UA clients "
+			+ "are monitoring. Other attributes are read when requested.")
+	public void setSubscriptionDriven(boolean subscriptionDriven) {
+		this.subscriptionDriven = subscriptionDriven;
+		rescheduleAll();
+	}
+
+	@JMXBeanAttribute(description = "Poll attributes whose value does not change "
+			+ "less often, up to AdaptiveMaxMs.")
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	@JMXBeanAttribute(description = "Poll attributes whose value does not change "
+			+ "less often, up to AdaptiveMaxMs.")
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+		polledAttributes.stream().forEach((jpa) -> {
+			jpa.setBackoffShift(0);
+			jpa.resetUnchangedPolls();
+		});
+		rescheduleAll();
+	}
+
+	@JMXBeanAttribute(description = "Longest interval adaptive polling backs "
+			+ "off to, in milliseconds.")
+	public int getAdaptiveMaxMs() {
+		return adaptiveMaxMs;
+	}
+
+	@JMXBeanAttribute(description = "Longest interval adaptive polling backs "
+			+ "off to, in milliseconds.")
+	public void setAdaptiveMaxMs(int adaptiveMaxMs) {
+		this.adaptiveMaxMs = Math.max(1, adaptiveMaxMs);
+		rescheduleAll();
+	}
+
+	@JMXBeanAttribute(description = "Number of unchanged polls in a row before "
+			+ "adaptive polling doubles an attribute's interval.")
+	public int getAdaptiveStablePolls() {
+		return adaptiveStablePolls;
+	}
+
+	@JMXBeanAttribute(description = "Number of unchanged polls in a row before "
+			+ "adaptive polling doubles an attribute's interval.")
+	public void setAdaptiveStablePolls(int adaptiveStablePolls) {
+		this.adaptiveStablePolls = Math.max(1, adaptiveStablePolls);
+	}
+
+	@JMXBeanAttribute(description = "Number of JMX attributes adaptive polling "
+			+ "currently reads less often than RefreshMs.")
+	public int getNumberBackedOffAttributes() {
+		return (int) polledAttributes.stream()
+				.filter((jpa) -> jpa.getBackoffShift() > 0)
+				.count();
+	}
+
+	@JMXBeanAttribute(description = "Number of JMX attributes with at least one "
+			+ "DataItem monitoring them.")
+	public int getNumberSubscribedAttributes() {
+		return (int) polledAttributes.stream()
+				.filter((jpa) -> jpa.getSubscriptionCount() > 0)
+				.count();
 	}
 
 	/**
@@ -193,13 +1051,129 @@ public class JmxAttributeRefreshWorker implements Runnable,
 		this.mBeanServerConnection = mBeanServerConnection;
 	}
 
+	@JMXBeanAttribute(description = "Delay before an unavailable attribute is "
+			+ "first read again, in milliseconds. Doubles with every failed probe.")
+	public int getProbeMinMs() {
+		return probeMinMs;
+	}
+
+	@JMXBeanAttribute(description = "Delay before an unavailable attribute is "
+			+ "first read again, in milliseconds. Doubles with every failed probe.")
+	public void setProbeMinMs(int probeMinMs) {
+		this.probeMinMs = Math.max(1, probeMinMs);
+	}
+
+	@JMXBeanAttribute(description = "Longest delay between reads of an "
+			+ "unavailable attribute, in milliseconds.")
+	public int getProbeMaxMs() {
+		return probeMaxMs;
+	}
+
+	@JMXBeanAttribute(description = "Longest delay between reads of an "
+			+ "unavailable attribute, in milliseconds.")
+	public void setProbeMaxMs(int probeMaxMs) {
+		this.probeMaxMs = Math.max(1, probeMaxMs);
+	}
+
+	@JMXBeanAttribute(description = "Number of unavailable JMX attributes that "
+			+ "could be read again.")
+	public long getRecoveredNodes() {
+		return recoveredNodes.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of refresh cycles that read at "
+			+ "least one attribute.")
+	public long getCycleCount() {
+		return cycleMicros.getCount();
+	}
+
+	@JMXBeanAttribute(description = "Median refresh cycle duration, in milliseconds.")
+	public double getCycleP50Ms() {
+		return cycleMicros.getPercentile(50) / 1000d;
+	}
+
+	@JMXBeanAttribute(description = "99th percentile of the refresh cycle "
+			+ "duration, in milliseconds.")
+	public double getCycleP99Ms() {
+		return cycleMicros.getPercentile(99) / 1000d;
+	}
+
+	@JMXBeanAttribute(description = "Longest refresh cycle, in milliseconds.")
+	public double getCycleMaxMs() {
+		return cycleMicros.getMax() / 1000d;
+	}
+
+	@JMXBeanAttribute(description = "Number of refresh cycles that ran past "
+			+ "the time the next attributes were due.")
+	public long getCycleOverruns() {
+		return cycleOverruns.get();
+	}
+
+	@JMXBeanAttribute(description = "MBeans that took the most time to read, "
+			+ "with their total read time.")
+	public String[] getTopObjectNames() {
+		return readCosts.entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue().nanos.sum(), a.getValue().nanos.sum()))
+				.limit(topObjectNamesSize)
+				.map((e) -> String.format("%s: %.1fms in %d reads",
+						e.getKey(), e.getValue().nanos.sum() / 1e6, e.getValue().reads.sum()))
+				.toArray(String[]::new);
+	}
+
+	@JMXBeanAttribute(description = "Number of MBeans listed in TopObjectNames.")
+	public int getTopObjectNamesSize() {
+		return topObjectNamesSize;
+	}
+
+	@JMXBeanAttribute(description = "Number of MBeans listed in TopObjectNames.")
+	public void setTopObjectNamesSize(int topObjectNamesSize) {
+		this.topObjectNamesSize = Math.max(0, topObjectNamesSize);
+	}
+
+	@JMXBeanOperation(name = "Reset Statistics", description = "Forget the "
+			+ "recorded cycle durations, overruns and MBean read times.")
+	public void resetStatistics() {
+		cycleMicros.reset();
+		cycleOverruns.set(0);
+		readCosts.clear();
+	}
+
 	@Override
 	public void nodeUnavailable(UaNode node) {
-		unavailableNodes.add(node);
+		if (unavailableNodes.add(node)) {
+			probes.putIfAbsent(node.getNodeId(),
+					new Probe(System.currentTimeMillis() + getProbeDelayMs(0)));
+		}
 	}
 
 	@Override
 	public void nodeAvailable(UaNode node) {
-		unavailableNodes.remove(node);
+		if (unavailableNodes.remove(node)) {
+			probes.remove(node.getNodeId());
+		}
+	}
+
+	private static final class ReadCost {
+
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder reads = new LongAdder();
+
+		private void add(long elapsedNanos) {
+			nanos.add(elapsedNanos);
+			reads.increment();
+		}
+	}
+
+	private static final class Probe {
+
+		/**
+		 * Only touched by the probe thread once added.
+		 */
+		private long nextProbeMs;
+		private int attempts;
+
+		private Probe(long nextProbeMs) {
+			this.nextProbeMs = nextProbeMs;
+		}
 	}
 }
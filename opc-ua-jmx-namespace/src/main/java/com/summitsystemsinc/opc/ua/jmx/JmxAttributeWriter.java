@@ -0,0 +1,318 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.udojava.jmx.wrapper.JMXBean;
+import com.udojava.jmx.wrapper.JMXBeanAttribute;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeMBeanException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes node values back to their JMX attributes off the OPC-UA stack
+ * threads.
+ *
+ * <p>
+ * Writes wait in a bounded queue serviced by one thread. A write to an
+ * attribute that is still waiting replaces the waiting value, and both writes
+ * complete with the status of the one JMX call. All waiting writes to an MBean
+ * are sent with a single setAttributes call.
+ * </p>
+ *
+ * @author Justin
+ */
+@JMXBean(description = "Writes OPC values to JMX attributes")
+public class JmxAttributeWriter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxAttributeWriter.class);
+
+	/**
+	 * Default number of attributes that may wait to be written.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+
+	private final MBeanServerConnection mBeanServerConnection;
+	private final int queueCapacity;
+	/**
+	 * Waiting writes by MBean, then attribute. Guarded by itself.
+	 */
+	private final Map<ObjectName, Map<String, PendingWrite>> pending = new LinkedHashMap<>();
+	private int pendingCount;
+	/**
+	 * Set once shut down, later writes are rejected. Guarded by pending.
+	 */
+	private boolean shutdown;
+	private final ExecutorService executor;
+
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong coalescedWrites = new AtomicLong();
+	private final AtomicLong setAttributesCalls = new AtomicLong();
+	private final AtomicLong failedWrites = new AtomicLong();
+
+	public JmxAttributeWriter(MBeanServerConnection mbsc) {
+		this(mbsc, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param mbsc Connection to write attributes to.
+	 * @param queueCapacity Number of attributes that may wait to be written
+	 * before further writes are rejected.
+	 */
+	public JmxAttributeWriter(MBeanServerConnection mbsc, int queueCapacity) {
+		this.mBeanServerConnection = mbsc;
+		this.queueCapacity = Math.max(1, queueCapacity);
+		String name = "JMX-UA Write-" + WRITER_COUNT.incrementAndGet();
+		this.executor = Executors.newSingleThreadExecutor((Runnable r) -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Queues a write of the attribute.
+	 *
+	 * @param jpa Attribute to write.
+	 * @param value New attribute value.
+	 * @return Completes with the status of the JMX call once it finished. On
+	 * success the node already holds the new value.
+	 */
+	public CompletableFuture<StatusCode> write(JmxPolledAttribute jpa, Object value) {
+		CompletableFuture<StatusCode> retVal = new CompletableFuture<>();
+		ObjectName on = jpa.getObjectName();
+		boolean schedule;
+		synchronized (pending) {
+			if (shutdown) {
+				failedWrites.incrementAndGet();
+				retVal.complete(new StatusCode(StatusCodes.Bad_Shutdown));
+				return retVal;
+			}
+			Map<String, PendingWrite> writesForBean = pending.get(on);
+			PendingWrite waiting = writesForBean != null
+					? writesForBean.get(jpa.getAttributeName()) : null;
+			if (waiting != null) {
+				waiting.value = value;
+				waiting.futures.add(retVal);
+				coalescedWrites.incrementAndGet();
+				return retVal;
+			}
+			if (pendingCount >= queueCapacity) {
+				failedWrites.incrementAndGet();
+				retVal.complete(new StatusCode(StatusCodes.Bad_TooManyOperations));
+				return retVal;
+			}
+			schedule = writesForBean == null;
+			if (schedule) {
+				writesForBean = new LinkedHashMap<>();
+				pending.put(on, writesForBean);
+			}
+			writesForBean.put(jpa.getAttributeName(), new PendingWrite(jpa, value, retVal));
+			pendingCount++;
+		}
+		writes.incrementAndGet();
+		if (schedule) {
+			try {
+				executor.execute(() -> flush(on));
+			} catch (RejectedExecutionException ex) {
+				//Shut down in the meantime, never write on the caller's thread.
+				drain();
+			}
+		}
+		return retVal;
+	}
+
+	private void flush(ObjectName on) {
+		List<PendingWrite> batch;
+		synchronized (pending) {
+			Map<String, PendingWrite> writesForBean = pending.remove(on);
+			if (writesForBean == null) {
+				return;
+			}
+			batch = new ArrayList<>(writesForBean.values());
+			pendingCount -= batch.size();
+		}
+
+		AttributeList attributes = new AttributeList(batch.size());
+		batch.stream().forEach((w) -> {
+			attributes.add(new Attribute(w.jpa.getAttributeName(), w.value));
+		});
+		Set<String> written = new HashSet<>();
+		StatusCode batchStatus = StatusCode.GOOD;
+		try {
+			setAttributesCalls.incrementAndGet();
+			mBeanServerConnection.setAttributes(on, attributes).asList().stream()
+					.forEach((a) -> written.add(a.getName()));
+		} catch (InstanceNotFoundException | ReflectionException | IOException | RuntimeException ex) {
+			LOGGER.warn("Could not write attributes of {}: {}", on, ex.getMessage());
+			batchStatus = toStatusCode(ex);
+		}
+
+		for (PendingWrite w : batch) {
+			StatusCode status = batchStatus;
+			if (status.isGood() && !written.contains(w.jpa.getAttributeName())) {
+				//setAttributes drops failed attributes silently, ask again for the cause.
+				status = writeAttribute(on, w);
+			}
+			if (status.isGood()) {
+				w.jpa.updateValue(w.value);
+			} else {
+				failedWrites.incrementAndGet();
+			}
+			for (CompletableFuture<StatusCode> f : w.futures) {
+				f.complete(status);
+			}
+		}
+	}
+
+	private StatusCode writeAttribute(ObjectName on, PendingWrite w) {
+		try {
+			mBeanServerConnection.setAttribute(on, new Attribute(w.jpa.getAttributeName(), w.value));
+			return StatusCode.GOOD;
+		} catch (InstanceNotFoundException | AttributeNotFoundException
+				| InvalidAttributeValueException | MBeanException
+				| ReflectionException | IOException | RuntimeException ex) {
+			LOGGER.warn("Could not write {} of {}: {}", w.jpa.getAttributeName(), on, ex.getMessage());
+			return toStatusCode(ex);
+		}
+	}
+
+	/**
+	 * @param ex Exception thrown by a JMX write.
+	 * @return Status reported to the client.
+	 */
+	protected static StatusCode toStatusCode(Exception ex) {
+		long code;
+		if (ex instanceof InstanceNotFoundException) {
+			code = StatusCodes.Bad_NodeIdUnknown;
+		} else if (ex instanceof AttributeNotFoundException) {
+			code = StatusCodes.Bad_NotWritable;
+		} else if (ex instanceof InvalidAttributeValueException
+				|| ex instanceof ClassCastException
+				|| ex instanceof IllegalArgumentException) {
+			code = StatusCodes.Bad_TypeMismatch;
+		} else if (ex instanceof IOException) {
+			code = StatusCodes.Bad_CommunicationError;
+		} else if (ex instanceof MBeanException || ex instanceof RuntimeMBeanException) {
+			code = StatusCodes.Bad_InternalError;
+		} else {
+			code = StatusCodes.Bad_UnexpectedError;
+		}
+		return new StatusCode(code);
+	}
+
+	/**
+	 * Stops the write thread. Waiting writes, and any write made later,
+	 * complete with Bad_Shutdown.
+	 */
+	public void shutdown() {
+		synchronized (pending) {
+			shutdown = true;
+		}
+		executor.shutdownNow();
+		drain();
+	}
+
+	private void drain() {
+		List<PendingWrite> dropped = new ArrayList<>();
+		synchronized (pending) {
+			pending.values().stream().forEach((writesForBean) -> dropped.addAll(writesForBean.values()));
+			pending.clear();
+			pendingCount = 0;
+		}
+		StatusCode status = new StatusCode(StatusCodes.Bad_Shutdown);
+		dropped.stream().forEach((w) -> {
+			failedWrites.incrementAndGet();
+			w.futures.stream().forEach((f) -> f.complete(status));
+		});
+	}
+
+	@JMXBeanAttribute(description = "Number of attributes waiting to be written.")
+	public int getQueueDepth() {
+		synchronized (pending) {
+			return pendingCount;
+		}
+	}
+
+	@JMXBeanAttribute(description = "Number of attributes that may wait to be written.")
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@JMXBeanAttribute(description = "Number of writes queued.")
+	public long getWrites() {
+		return writes.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of writes merged into a waiting "
+			+ "write of the same attribute.")
+	public long getCoalescedWrites() {
+		return coalescedWrites.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of setAttributes calls made.")
+	public long getSetAttributesCalls() {
+		return setAttributesCalls.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of writes that failed or were rejected.")
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	private static final class PendingWrite {
+
+		private final JmxPolledAttribute jpa;
+		private Object value;
+		private final List<CompletableFuture<StatusCode>> futures = new ArrayList<>(1);
+
+		private PendingWrite(JmxPolledAttribute jpa, Object value, CompletableFuture<StatusCode> future) {
+			this.jpa = jpa;
+			this.value = value;
+			this.futures.add(future);
+		}
+	}
+}
@@ -20,6 +20,7 @@ package com.summitsystemsinc.opc.ua.jmx;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  * #L%
  */
+import com.digitalpetri.opcua.sdk.core.AccessLevel;
 import com.digitalpetri.opcua.sdk.core.Reference;
 import com.digitalpetri.opcua.sdk.server.OpcUaServer;
 import com.digitalpetri.opcua.sdk.server.api.DataItem;
@@ -32,10 +33,12 @@ import com.digitalpetri.opcua.sdk.server.model.UaNode;
 import com.digitalpetri.opcua.sdk.server.model.UaObjectNode;
 import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
 import com.digitalpetri.opcua.sdk.server.util.SubscriptionModel;
+import com.digitalpetri.opcua.stack.core.AttributeIds;
 import com.digitalpetri.opcua.stack.core.Identifiers;
 import com.digitalpetri.opcua.stack.core.StatusCodes;
 import com.digitalpetri.opcua.stack.core.UaException;
 import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.DateTime;
 import com.digitalpetri.opcua.stack.core.types.builtin.ExpandedNodeId;
 import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
 import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
@@ -47,33 +50,50 @@ import com.digitalpetri.opcua.stack.core.types.enumerated.NodeClass;
 import com.digitalpetri.opcua.stack.core.types.enumerated.TimestampsToReturn;
 import com.digitalpetri.opcua.stack.core.types.structured.ReadValueId;
 import com.digitalpetri.opcua.stack.core.types.structured.WriteValue;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.PeekingIterator;
+import com.summitsystemsinc.opc.ua.jmx.types.ArrayTypeNodeFactory;
 import com.summitsystemsinc.opc.ua.jmx.types.DefaultTypes;
 import com.summitsystemsinc.opc.ua.jmx.types.TypeNodeFactory;
+import com.summitsystemsinc.opc.ua.jmx.types.ValueSlot;
 import com.udojava.jmx.wrapper.JMXBeanWrapper;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.IntrospectionException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import org.slf4j.Logger;
@@ -107,7 +127,69 @@ public class JmxNamespace implements UaNamespace {
 
 	private final MBeanServerConnection mBeanServer;
 
-	private final JmxAttributeRefreshWorker refreshWorker;
+	/**
+	 * Attributes of an MBean are polled by the worker its ObjectName hashes
+	 * to.
+	 */
+	private final List<JmxAttributeRefreshWorker> refreshWorkers;
+	private final JmxAttributeWriter writer;
+	private final JmxOperationInvoker operationInvoker;
+	/**
+	 * Null if no attribute keeps history.
+	 */
+	private final HistoryStore historyStore;
+	private final JmxNamespaceConfig config;
+
+	/**
+	 * Guards every change to the folders, variable nodes and polled
+	 * attributes built from MBeans.
+	 */
+	private final Object modelLock = new Object();
+	/**
+	 * Every known MBean folder, whether or not its nodes have been built.
+	 */
+	private final MBeanPathIndex pathIndex = new MBeanPathIndex();
+	/**
+	 * Polled attributes of every MBean whose variable nodes exist.
+	 */
+	private final Map<ObjectName, List<JmxPolledAttribute>> attributesByObjectName = new HashMap<>();
+	/**
+	 * Method nodes of each MBean with supported operations. Guarded by
+	 * modelLock.
+	 */
+	private final Map<ObjectName, List<NodeId>> methodsByObjectName = new HashMap<>();
+	/**
+	 * Lazy mode only: MBean folders whose variable nodes exist, least recently
+	 * used first.
+	 */
+	private final LinkedHashMap<String, List<JmxPolledAttribute>> materializedPaths
+			= new LinkedHashMap<>(16, 0.75f, true);
+	private final List<ModelChangeListener> modelChangeListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * Applies MBean (un)registrations off the thread that sent the
+	 * notification.
+	 */
+	private ExecutorService modelExecutor;
+	private final NotificationListener registrationListener = this::handleRegistration;
+	private final UnavailableNodeDispatcher unavailableNodeDispatcher = new UnavailableNodeDispatcher();
+	/**
+	 * Held here, factories only keep their listeners weakly.
+	 */
+	private final TypeNodeFactory.ChildNodeListener childNodeDispatcher = new TypeNodeFactory.ChildNodeListener() {
+		@Override
+		public void childNodesAdded(NodeId parent, Collection<NodeId> added) {
+			fireNodesAdded(parent, new ArrayList<>(added));
+		}
+
+		@Override
+		public void childNodesDeleted(NodeId parent, Collection<NodeId> deleted) {
+			fireNodesDeleted(parent, new ArrayList<>(deleted));
+		}
+	};
+	/**
+	 * MBeans of this namespace registered in the platform MBean server.
+	 */
+	private final List<ObjectName> registeredMBeans = new ArrayList<>();
 
 	private Set<String> unsupportedTypes = new TreeSet<>();
 	private Map<String, TypeNodeFactory> typesToFactories = new HashMap<>();
@@ -117,7 +199,7 @@ public class JmxNamespace implements UaNamespace {
 				namespaceIndex,
 				DEFAULT_NAMESPACE_URI,
 				ManagementFactory.getPlatformMBeanServer(),
-				DefaultTypes.DEFAULT_TYPE_FACTORIES,
+				DefaultTypes.newTypeFactories(),
 				refreshMs);
 	}
 
@@ -130,9 +212,9 @@ public class JmxNamespace implements UaNamespace {
 			UShort namespaceIndex,
 			String namespaceUri,
 			MBeanServerConnection mBeanServerConnection) {
-		this(server, namespaceIndex, DEFAULT_NAMESPACE_URI,
-				ManagementFactory.getPlatformMBeanServer(),
-				DefaultTypes.DEFAULT_TYPE_FACTORIES);
+		this(server, namespaceIndex, namespaceUri,
+				mBeanServerConnection,
+				DefaultTypes.newTypeFactories());
 	}
 
 	public JmxNamespace(OpcUaServer server,
@@ -153,29 +235,61 @@ public class JmxNamespace implements UaNamespace {
 			String namespaceUri,
 			MBeanServerConnection mBeanServerConnection,
 			Set<TypeNodeFactory> supportedTypes, int refreshRate) {
+		this(server,
+				namespaceIndex,
+				namespaceUri,
+				mBeanServerConnection,
+				supportedTypes,
+				JmxNamespaceConfig.builder().setRefreshMs(refreshRate).build());
+	}
+
+	public JmxNamespace(OpcUaServer server,
+			UShort namespaceIndex,
+			String namespaceUri,
+			MBeanServerConnection mBeanServerConnection,
+			Set<TypeNodeFactory> supportedTypes,
+			JmxNamespaceConfig config) {
 		this.server = server;
 		this.namespaceIndex = namespaceIndex;
 		this.namespaceUri = namespaceUri;
 		this.mBeanServer = mBeanServerConnection;
-		this.refreshWorker = new JmxAttributeRefreshWorker(refreshRate, mBeanServer);
-		MBeanServer localMBeanServer = ManagementFactory.getPlatformMBeanServer();
-		try {
-			ObjectName on = new ObjectName(refreshWorker.getClass().getPackage().getName() + ":type=" + refreshWorker.getClass().getSimpleName());
-			localMBeanServer.registerMBean(new JMXBeanWrapper(this.refreshWorker), on);
-
-		} catch (MalformedObjectNameException |
-				IntrospectionException |
-				InstanceAlreadyExistsException |
-				MBeanRegistrationException |
-				NotCompliantMBeanException ex) {
-			LOGGER.warn(ex.getMessage(), ex);
+		this.config = config;
+		List<JmxAttributeRefreshWorker> workers = new ArrayList<>();
+		for (int i = 0; i < Math.max(1, config.getRefreshShards()); i++) {
+			JmxAttributeRefreshWorker worker = new JmxAttributeRefreshWorker(config.getRefreshMs(),
+					mBeanServer,
+					config.getRefreshThreads(),
+					config.isVirtualThreads());
+			worker.setSubscriptionDriven(config.isSubscriptionDriven());
+			worker.setAdaptiveMaxMs(config.getAdaptiveMaxMs());
+			worker.setAdaptive(config.isAdaptive());
+			workers.add(worker);
+		}
+		this.refreshWorkers = Collections.unmodifiableList(workers);
+		this.writer = new JmxAttributeWriter(mBeanServer, config.getWriteQueueCapacity());
+		this.operationInvoker = new JmxOperationInvoker(mBeanServer,
+				config.getOperationThreads(),
+				config.getOperationQueueCapacity(),
+				config.getOperationTimeoutMs(),
+				config.getOperationConcurrency());
+		this.historyStore = config.getHistoryRetention().isEmpty()
+				? null : new HistoryStore(config.getHistoryRetention());
+		refreshWorkers.stream().forEach((worker) -> worker.setHistoryStore(historyStore));
+		for (int i = 0; i < refreshWorkers.size(); i++) {
+			registerMBean(refreshWorkers.get(i), refreshWorkers.size() > 1 ? i : -1);
+		}
+		registerMBean(writer, -1);
+		registerMBean(operationInvoker, -1);
+		if (historyStore != null) {
+			registerMBean(historyStore, -1);
 		}
 
 		supportedTypes.stream().forEach((tnf) -> {
 			tnf.setMBeanServerConnection(mBeanServer);
 			tnf.setNamespace(this);
 			tnf.setNamespaceIndex(namespaceIndex);
-			tnf.addUnavailableNodeListener(refreshWorker);
+			tnf.addUnavailableNodeListener(unavailableNodeDispatcher);
+			tnf.addChildNodeListener(childNodeDispatcher);
 			for (String s : tnf.getSupportedTypes()) {
 				typesToFactories.put(s, tnf);
 			}
@@ -201,65 +315,569 @@ public class JmxNamespace implements UaNamespace {
 		}
 		this.subscriptionModel = new SubscriptionModel(server, this);
 
-		populateMBeans();
+		if (config.isTrackRegistrations()) {
+			//Listen before querying so nothing registered in between is missed.
+			listenForRegistrations();
+		}
+		if (config.isLazy()) {
+			indexMBeans();
+		} else {
+			populateMBeans();
+		}
 
 		unsupportedTypes.stream().forEach((s) -> {
 			LOGGER.info("Unsupported Type: {}", s);
 		});
 	}
 
+	/**
+	 * Registers one of this namespace's workers in the platform MBean server,
+	 * under a name holding the namespace URI so several namespaces can live
+	 * in one JVM.
+	 *
+	 * @param bean Worker with JMX annotations.
+	 * @param shard Index of a sharded refresh worker, negative otherwise.
+	 */
+	private void registerMBean(Object bean, int shard) {
+		try {
+			ObjectName on = new ObjectName(bean.getClass().getPackage().getName()
+					+ ":type=" + bean.getClass().getSimpleName()
+					+ ",namespace=" + ObjectName.quote(namespaceUri)
+					+ (shard >= 0 ? ",shard=" + shard : ""));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new JMXBeanWrapper(bean), on);
+			registeredMBeans.add(on);
+		} catch (MalformedObjectNameException |
+				IntrospectionException |
+				InstanceAlreadyExistsException |
+				MBeanRegistrationException |
+				NotCompliantMBeanException ex) {
+			LOGGER.warn(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * @return The first, or only, worker refreshing this namespace's nodes.
+	 */
+	public JmxAttributeRefreshWorker getRefreshWorker() {
+		return refreshWorkers.get(0);
+	}
+
+	/**
+	 * @return Every worker refreshing this namespace's nodes, one per shard.
+	 */
+	public List<JmxAttributeRefreshWorker> getRefreshWorkers() {
+		return refreshWorkers;
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @return The worker polling the MBean's attributes.
+	 */
+	public JmxAttributeRefreshWorker getRefreshWorker(ObjectName on) {
+		return refreshWorkers.get(Math.floorMod(on.hashCode(), refreshWorkers.size()));
+	}
+
+	/**
+	 * @param nodeId Variable node id.
+	 * @return The polled attribute backing the node, or null.
+	 */
+	private JmxPolledAttribute getPolledAttribute(NodeId nodeId) {
+		for (JmxAttributeRefreshWorker worker : refreshWorkers) {
+			JmxPolledAttribute jpa = worker.getPolledAttribute(nodeId);
+			if (jpa != null) {
+				return jpa;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The writer sending node writes to JMX.
+	 */
+	public JmxAttributeWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * @return The invoker running method calls as MBean operations.
+	 */
+	public JmxOperationInvoker getOperationInvoker() {
+		return operationInvoker;
+	}
+
+	/**
+	 * @return Recent values of historized attributes, null if none are.
+	 */
+	public HistoryStore getHistoryStore() {
+		return historyStore;
+	}
+
 	public void startRefresh() {
-		refreshWorker.start();
+		refreshWorkers.stream().forEach(JmxAttributeRefreshWorker::start);
 	}
 
 	public void stopRefresh() {
-		refreshWorker.stop();
+		refreshWorkers.stream().forEach(JmxAttributeRefreshWorker::stop);
+	}
+
+	/**
+	 * Takes this namespace out of service: stops following MBean
+	 * registrations, stops every worker thread and unregisters the workers'
+	 * MBeans, so another namespace with the same URI can take its place.
+	 * Nodes are left as they are.
+	 */
+	public void shutdown() {
+		if (config.isTrackRegistrations()) {
+			try {
+				mBeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener);
+			} catch (InstanceNotFoundException | ListenerNotFoundException | IOException ex) {
+				LOGGER.debug("Could not stop listening for MBean registrations.", ex);
+			}
+		}
+		synchronized (this) {
+			if (modelExecutor != null) {
+				modelExecutor.shutdownNow();
+			}
+		}
+		stopRefresh();
+		writer.shutdown();
+		operationInvoker.shutdown();
+		typesToFactories.values().stream().distinct()
+				.forEach((tnf) -> {
+					tnf.removeUnavailableNodeListener(unavailableNodeDispatcher);
+					tnf.removeChildNodeListener(childNodeDispatcher);
+				});
+
+		MBeanServer localMBeanServer = ManagementFactory.getPlatformMBeanServer();
+		registeredMBeans.stream().forEach((on) -> {
+			try {
+				localMBeanServer.unregisterMBean(on);
+			} catch (InstanceNotFoundException | MBeanRegistrationException ex) {
+				LOGGER.debug("Could not unregister {}", on, ex);
+			}
+		});
+		registeredMBeans.clear();
+		LOGGER.info("Shut down namespace {}", namespaceUri);
+	}
+
+	/**
+	 * @param subscriptionDriven True to only poll attributes with active
+	 * DataItems and read everything else on demand.
+	 */
+	public void setSubscriptionDrivenPolling(boolean subscriptionDriven) {
+		refreshWorkers.stream().forEach((worker) -> worker.setSubscriptionDriven(subscriptionDriven));
+	}
+
+	public boolean isSubscriptionDrivenPolling() {
+		return getRefreshWorker().isSubscriptionDriven();
+	}
+
+	/**
+	 * @return The options this namespace was built with.
+	 */
+	public JmxNamespaceConfig getConfig() {
+		return config;
+	}
+
+	public void addModelChangeListener(ModelChangeListener l) {
+		modelChangeListeners.add(l);
+	}
+
+	public void removeModelChangeListener(ModelChangeListener l) {
+		modelChangeListeners.remove(l);
 	}
 
 	public boolean isTypeSupported(String type) {
 		return typesToFactories.containsKey(type);
 	}
 
-	//TODO whitelist/blacklist
 	private void populateMBeans() {
+		MBeanSnapshot snapshot = config.getSnapshotFile() != null
+				? new MBeanSnapshot(config.getSnapshotFile()) : null;
+		if (snapshot != null && snapshot.exists() && populateFromSnapshot(snapshot)) {
+			return;
+		}
+		Map<ObjectName, MBeanInfo> discovered = new LinkedHashMap<>();
 		try {
-			Set<ObjectName> ons = new TreeSet<>(mBeanServer.queryNames(null, null));
+			Set<ObjectName> ons = config.getFilter().queryNames(mBeanServer);
 			final AtomicInteger count = new AtomicInteger(1);
-			Map<String, UaNode> folders = new HashMap<>();
-			ons.stream().forEach((on) -> {
+			MBeanInfoDiscovery discovery = new MBeanInfoDiscovery(mBeanServer,
+					config.getDiscoveryParallelism(), config.getDiscoveryTimeoutMs());
+			//MBeanInfos are fetched concurrently but added in name order.
+			discovery.discover(ons, (on, info) -> {
 				if (LOGGER.isDebugEnabled()) {
 					LOGGER.debug("{}. Object name : {}", count.get(), on);
 					LOGGER.debug("{}. Object domain : {}", count.get(), on.getDomain());
 					LOGGER.debug("{}. Object cn : {}", count.get(), on.getCanonicalKeyPropertyListString());
 				}
-				Map<String, String> cnProperties = keyPropertiesToMap(on.getCanonicalKeyPropertyListString());
-				StringBuilder pathBuilder = new StringBuilder(on.getDomain().replace('.', '/'));
-				pathBuilder.append("/");
-				pathBuilder.append(cnProperties.get("type"));
-				if (cnProperties.containsKey("name")) {
-					pathBuilder.append("/");
-					pathBuilder.append(cnProperties.get("name"));
-				}
-				String path = pathBuilder.toString();
-				LOGGER.debug("{}. OPC-UA Path: {}", count.get(), path);
-				if (!folders.containsKey(path)) {
-					folders.put(path, addFoldersToRoot(path));
+				LOGGER.debug("{}. OPC-UA Path: {}", count.get(), getPath(on));
+				addMBean(on, false, info);
+				discovered.put(on, info);
+
+				count.incrementAndGet();
+			});
+		} catch (IOException ex) {
+			LOGGER.warn(ex.getMessage(), ex);
+			return;
+		}
+		if (snapshot != null) {
+			writeSnapshot(snapshot, discovered);
+		}
+	}
+
+	/**
+	 * Builds the address space from a snapshot without asking the MBean
+	 * server for MBeanInfo, then reconciles with the live MBeans in the
+	 * background.
+	 *
+	 * @param snapshot Snapshot to build from.
+	 * @return False if the snapshot could not be read.
+	 */
+	private boolean populateFromSnapshot(MBeanSnapshot snapshot) {
+		Map<ObjectName, MBeanInfo> cached;
+		try {
+			cached = snapshot.read();
+		} catch (IOException ex) {
+			LOGGER.warn("Could not read snapshot, discovering MBeans instead: {}", ex.getMessage());
+			return false;
+		}
+		cached.forEach((on, info) -> {
+			if (config.getFilter().isIncluded(on)) {
+				addMBean(on, false, info);
+			}
+		});
+		LOGGER.info("Built {} MBeans from {}, reconciling with the MBean server in the background.",
+				pathIndex.size(), snapshot.getFile());
+		getModelExecutor().execute(() -> reconcile(snapshot, cached));
+		return true;
+	}
+
+	/**
+	 * Brings an address space built from a snapshot in line with the MBean
+	 * server, and writes a fresh snapshot.
+	 *
+	 * @param snapshot Snapshot the address space was built from.
+	 * @param cached MBeans read from it.
+	 */
+	private void reconcile(MBeanSnapshot snapshot, Map<ObjectName, MBeanInfo> cached) {
+		Map<ObjectName, MBeanInfo> discovered = new LinkedHashMap<>();
+		AtomicInteger added = new AtomicInteger();
+		AtomicInteger changed = new AtomicInteger();
+		int removed = 0;
+		try {
+			Set<ObjectName> live = config.getFilter().queryNames(mBeanServer);
+			for (ObjectName on : cached.keySet()) {
+				if (!live.contains(on)) {
+					removeMBean(on);
+					removed++;
 				}
-				UaNode folder = folders.get(path);
+			}
+			new MBeanInfoDiscovery(mBeanServer,
+					config.getDiscoveryParallelism(), config.getDiscoveryTimeoutMs())
+					.discover(live, (on, info) -> {
+						discovered.put(on, info);
+						MBeanInfo old = cached.get(on);
+						if (old == null) {
+							addMBean(on, true, info);
+							added.incrementAndGet();
+						} else if (!MBeanSnapshot.isEquivalent(old, info)) {
+							removeMBean(on);
+							addMBean(on, true, info);
+							changed.incrementAndGet();
+						}
+					});
+		} catch (IOException ex) {
+			LOGGER.warn("Could not reconcile with the MBean server, keeping the snapshot.", ex);
+			return;
+		}
+		LOGGER.info("Reconciled snapshot: {} MBeans added, {} changed, {} removed.",
+				added.get(), changed.get(), removed);
+		writeSnapshot(snapshot, discovered);
+	}
 
-				registerAttributeNodes(path, folder, on);
+	private void writeSnapshot(MBeanSnapshot snapshot, Map<ObjectName, MBeanInfo> mBeans) {
+		try {
+			snapshot.write(mBeans);
+			LOGGER.debug("Wrote {} MBeans to {}", mBeans.size(), snapshot.getFile());
+		} catch (IOException ex) {
+			LOGGER.warn("Could not write snapshot " + snapshot.getFile(), ex);
+		}
+	}
 
-				count.incrementAndGet();
+	/**
+	 * Lazy mode: only records the folder of every MBean. Folders and variable
+	 * nodes are built when a client first touches them.
+	 */
+	private void indexMBeans() {
+		try {
+			config.getFilter().queryNames(mBeanServer).stream().forEach((on) -> {
+				addMBean(on, false);
 			});
+			LOGGER.info("Indexed {} MBeans, nodes will be built on first use.", pathIndex.size());
 		} catch (IOException ex) {
 			LOGGER.warn(ex.getMessage(), ex);
 		}
 	}
 
-	private void registerAttributeNodes(String path, UaNode folder, ObjectName on) {
+	/**
+	 * @return The thread changing the address space after construction.
+	 */
+	private synchronized ExecutorService getModelExecutor() {
+		if (modelExecutor == null) {
+			modelExecutor = Executors.newSingleThreadExecutor((Runnable r) -> {
+				Thread t = new Thread(r, "JMX-UA Model " + namespaceUri);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return modelExecutor;
+	}
+
+	private void listenForRegistrations() {
+		try {
+			mBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+					registrationListener, null, null);
+		} catch (InstanceNotFoundException | IOException ex) {
+			LOGGER.warn("Could not listen for MBean registrations, "
+					+ "the address space will not follow them.", ex);
+		}
+	}
+
+	private void handleRegistration(Notification notification, Object handback) {
+		if (!(notification instanceof MBeanServerNotification)) {
+			return;
+		}
+		ObjectName on = ((MBeanServerNotification) notification).getMBeanName();
+		if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())
+				&& config.getFilter().isIncluded(on)) {
+			getModelExecutor().execute(() -> addMBean(on, true));
+		} else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			getModelExecutor().execute(() -> removeMBean(on));
+		}
+	}
+
+	/**
+	 * Adds an MBean to the address space. Lazy namespaces only build its nodes
+	 * if its folder is already built.
+	 *
+	 * @param on MBean name.
+	 * @param notify Tell {@link ModelChangeListener}s about the new nodes.
+	 */
+	protected void addMBean(ObjectName on, boolean notify) {
+		addMBean(on, notify, null);
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param notify Tell {@link ModelChangeListener}s about the new nodes.
+	 * @param info Already fetched MBeanInfo, or null to fetch it if needed.
+	 * @see #addMBean(javax.management.ObjectName, boolean)
+	 */
+	protected void addMBean(ObjectName on, boolean notify, MBeanInfo info) {
+		String path = getPath(on);
+		synchronized (modelLock) {
+			if (pathIndex.contains(path, on)) {
+				return;
+			}
+			List<String> newFolders = pathIndex.add(path, on);
+			List<NodeId> addedFolders = new ArrayList<>();
+			List<NodeId> addedVariables = new ArrayList<>();
+			//Each folder node is built once, when its path first appears. Lazy
+			//namespaces only link new folders to parents that are built.
+			for (String newFolder : newFolders) {
+				if (!config.isLazy()) {
+					nodes.put(getFolderNodeId(newFolder), newFolderNode(newFolder));
+				}
+				UaNode parent = nodes.get(getFolderNodeId(MBeanPathIndex.getParent(newFolder)));
+				if (parent != null) {
+					addFolderReference(parent, newFolder);
+				}
+			}
+			UaNode folder;
+			if (config.isLazy()) {
+				List<JmxPolledAttribute> materialized = materializedPaths.get(path);
+				folder = materialized == null ? null : nodes.get(getFolderNodeId(path));
+				if (folder != null) {
+					List<JmxPolledAttribute> attributes = registerAttributeNodes(path, folder, on);
+					materialized.addAll(attributes);
+					attributes.stream().forEach((jpa) -> addedVariables.add(jpa.getNode().getNodeId()));
+				}
+			} else {
+				folder = nodes.get(getFolderNodeId(path));
+				registerAttributeNodes(path, folder, on, info).stream()
+						.forEach((jpa) -> addedVariables.add(jpa.getNode().getNodeId()));
+			}
+			if (folder != null) {
+				addedVariables.addAll(methodsByObjectName.getOrDefault(on, Collections.<NodeId>emptyList()));
+			}
+			if (notify) {
+				if (!newFolders.isEmpty()) {
+					String top = newFolders.get(0);
+					addedFolders.add(getFolderNodeId(top));
+					fireNodesAdded(getFolderNodeId(MBeanPathIndex.getParent(top)), addedFolders);
+				}
+				if (!addedVariables.isEmpty()) {
+					fireNodesAdded(getFolderNodeId(path), addedVariables);
+				}
+				LOGGER.debug("Added MBean {}", on);
+			}
+		}
+	}
+
+	/**
+	 * Removes an MBean's variable nodes and polled attributes, and any folder
+	 * left empty by it.
+	 *
+	 * @param on MBean name.
+	 */
+	protected void removeMBean(ObjectName on) {
+		String path = getPath(on);
+		synchronized (modelLock) {
+			NodeId folderId = getFolderNodeId(path);
+			UaNode folder = nodes.get(folderId);
+			List<NodeId> removedVariables = new ArrayList<>();
+			List<JmxPolledAttribute> attributes = attributesByObjectName.remove(on);
+			if (attributes != null) {
+				attributes.stream().forEach((jpa) -> {
+					NodeId nodeId = jpa.getNode().getNodeId();
+					removeAttributeNode(jpa);
+					if (historyStore != null) {
+						historyStore.remove(nodeId);
+					}
+					if (folder != null) {
+						folder.removeReference(new Reference(
+								folderId,
+								Identifiers.Organizes,
+								nodeId.expanded(),
+								NodeClass.Variable,
+								true));
+					}
+					removedVariables.add(nodeId);
+				});
+				List<JmxPolledAttribute> materialized = materializedPaths.get(path);
+				if (materialized != null) {
+					materialized.removeAll(attributes);
+				}
+			}
+			removedVariables.addAll(removeMethodNodes(on, folder));
+			operationInvoker.removeMBean(on);
+			if (!removedVariables.isEmpty()) {
+				fireNodesDeleted(folderId, removedVariables);
+			}
+
+			List<String> removedFolders = pathIndex.remove(path, on);
+			removedFolders.stream().forEach((removed) -> {
+				nodes.remove(getFolderNodeId(removed));
+				materializedPaths.remove(removed);
+			});
+			if (!removedFolders.isEmpty()) {
+				String top = removedFolders.get(removedFolders.size() - 1);
+				NodeId parentId = getFolderNodeId(MBeanPathIndex.getParent(top));
+				NodeId topId = getFolderNodeId(top);
+				UaNode parent = nodes.get(parentId);
+				if (parent != null) {
+					parent.removeReference(new Reference(
+							parentId,
+							Identifiers.Organizes,
+							topId.expanded(),
+							NodeClass.Object,
+							true));
+				}
+				List<NodeId> deleted = new ArrayList<>();
+				deleted.add(topId);
+				fireNodesDeleted(parentId, deleted);
+			}
+			LOGGER.debug("Removed MBean {}", on);
+		}
+	}
+
+	/**
+	 * Stops polling an attribute and removes its node, any child nodes its
+	 * factory built and its derived value nodes.
+	 *
+	 * @param jpa Polled attribute.
+	 */
+	private void removeAttributeNode(JmxPolledAttribute jpa) {
+		getRefreshWorker(jpa.getObjectName()).removePolledAttribute(jpa);
+		nodes.remove(jpa.getNode().getNodeId());
+		if (jpa.getDerived() != null) {
+			jpa.getDerived().getNodes().stream().forEach((n) -> nodes.remove(n.getNodeId()));
+		}
+		if (jpa.getFactory() != null) {
+			jpa.getFactory().nodeRemoved(jpa.getNode());
+		}
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param folder Folder node of the MBean, null if not built.
+	 * @return Removed method nodes.
+	 */
+	private List<NodeId> removeMethodNodes(ObjectName on, UaNode folder) {
+		List<NodeId> methods = methodsByObjectName.remove(on);
+		if (methods == null) {
+			return Collections.emptyList();
+		}
+		methods.stream().forEach((nodeId) -> {
+			nodes.remove(nodeId);
+			if (folder != null) {
+				folder.removeReference(new Reference(
+						folder.getNodeId(),
+						Identifiers.HasComponent,
+						nodeId.expanded(),
+						NodeClass.Method,
+						true));
+			}
+		});
+		return methods;
+	}
+
+	private void fireNodesAdded(NodeId parent, List<NodeId> added) {
+		modelChangeListeners.stream().forEach((l) -> l.nodesAdded(parent, added));
+	}
+
+	private void fireNodesDeleted(NodeId parent, List<NodeId> deleted) {
+		modelChangeListeners.stream().forEach((l) -> l.nodesDeleted(parent, deleted));
+	}
+
+	/**
+	 * @param path Folder path, the empty string being the root.
+	 * @return NodeId of the folder.
+	 */
+	private NodeId getFolderNodeId(String path) {
+		return path.isEmpty() ? rootFolder.getNodeId() : new NodeId(namespaceIndex, "/" + path);
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @return Folder path the MBean's attributes are placed in.
+	 */
+	protected String getPath(ObjectName on) {
+		StringBuilder pathBuilder = new StringBuilder(on.getDomain().replace('.', '/'));
+		pathBuilder.append("/");
+		pathBuilder.append(on.getKeyProperty("type"));
+		String name = on.getKeyProperty("name");
+		if (name != null) {
+			pathBuilder.append("/");
+			pathBuilder.append(name);
+		}
+		return pathBuilder.toString();
+	}
+
+	private List<JmxPolledAttribute> registerAttributeNodes(String path, UaNode folder, ObjectName on) {
+		return registerAttributeNodes(path, folder, on, null);
+	}
+
+	private List<JmxPolledAttribute> registerAttributeNodes(String path, UaNode folder, ObjectName on,
+			MBeanInfo mBeanInfo) {
+		List<JmxPolledAttribute> retVal = new ArrayList<>();
 		try {
-			final MBeanAttributeInfo[] attributes = mBeanServer.getMBeanInfo(on).getAttributes();
+			final MBeanInfo beanInfo = mBeanInfo != null ? mBeanInfo : mBeanServer.getMBeanInfo(on);
+			final MBeanAttributeInfo[] attributes = beanInfo.getAttributes();
 			for (MBeanAttributeInfo info : attributes) {
+				if (!config.getFilter().isIncluded(on, info.getName())) {
+					continue;
+				}
 				StringBuilder readWrite = new StringBuilder();
 				readWrite.append(info.isReadable() ? "r" : " ");
 				readWrite.append(info.isWritable() ? "w" : " ");
@@ -270,7 +888,8 @@ public class JmxNamespace implements UaNamespace {
 						readWrite, type,
 						typeSupported ? "*" : "");
 				if (typeSupported) {
-					UaVariableNode node = typesToFactories.get(type).buildNode(path, on, info);
+					TypeNodeFactory factory = typesToFactories.get(type);
+					UaVariableNode node = factory.buildNode(path, on, info);
 					folder.addReference(new Reference(
 							folder.getNodeId(),
 							Identifiers.Organizes,
@@ -281,28 +900,248 @@ public class JmxNamespace implements UaNamespace {
 
 					LOGGER.debug("Added reference: {} -> {}", folder.getNodeId(), node.getNodeId());
 					addNode(node);
-					refreshWorker.addPolledAttribute(
-							new JmxPolledAttribute(on,
-									info.getName(), node));
+					JmxPolledAttribute jpa = new JmxPolledAttribute(on,
+							info.getName(), node, factory);
+					jpa.setDeadband(config.getDeadband(on, info.getName()));
+					if (historyStore != null) {
+						historyStore.register(jpa, type);
+					}
+					long derivedWindowMs = config.getDerivedWindowMs(on, info.getName());
+					if (derivedWindowMs > 0 && HistoryStore.isNumeric(type)) {
+						jpa.setDerived(new DerivedValues(this, node, derivedWindowMs));
+					}
+					getRefreshWorker(on).addPolledAttribute(jpa);
+					unavailableNodeDispatcher.polled(jpa);
+					retVal.add(jpa);
 				} else {
 					unsupportedTypes.add(type);
 				}
 			}
+			if (config.isOperations()) {
+				registerMethodNodes(path, folder, on, beanInfo.getOperations());
+			}
 		} catch (InstanceNotFoundException | IntrospectionException | ReflectionException | IOException ex) {
 			LOGGER.warn(ex.getMessage(), ex);
 		}
+		attributesByObjectName.computeIfAbsent(on, (k) -> new ArrayList<>()).addAll(retVal);
+		return retVal;
 	}
 
-	private Map<String, String> keyPropertiesToMap(String keyPropertiesString) {
-		Map<String, String> retVal = new HashMap<>();
+	/**
+	 * Adds a method node for every supported operation of the MBean the
+	 * configuration exposes.
+	 *
+	 * @param path Folder path of the MBean.
+	 * @param folder Folder node of the MBean.
+	 * @param on MBean name.
+	 * @param operations Operations of the MBean.
+	 */
+	private void registerMethodNodes(String path, UaNode folder, ObjectName on, MBeanOperationInfo[] operations) {
+		if (operations == null) {
+			return;
+		}
+		for (MBeanOperationInfo info : operations) {
+			if (!config.isOperationExposed(on, info.getName())) {
+				continue;
+			}
+			if (!JmxOperationMethod.isSupported(info)) {
+				LOGGER.debug("\t{}() unsupported signature", info.getName());
+				continue;
+			}
+			JmxOperationMethod method = new JmxOperationMethod(operationInvoker, on, info);
+			UaMethodNode node = method.buildNode(this, namespaceIndex, path);
+			folder.addReference(new Reference(
+					folder.getNodeId(),
+					Identifiers.HasComponent,
+					node.getNodeId().expanded(),
+					NodeClass.Method,
+					true
+			));
+			addNode(node);
+			methodsByObjectName.computeIfAbsent(on, (k) -> new ArrayList<>()).add(node.getNodeId());
+			LOGGER.debug("Added method: {}", method);
+		}
+	}
 
-		String[] keyStrings = keyPropertiesString.split(",");
-		for (String s : keyStrings) {
-			String[] keyVal = s.split("=");
-			retVal.put(keyVal[0], keyVal[1]);
+	/**
+	 * Finds a node, building it first if this namespace is lazy.
+	 *
+	 * @param nodeId Node to find.
+	 * @return The node, or null if it does not exist.
+	 */
+	private UaNode findNode(NodeId nodeId) {
+		UaNode node = nodes.get(nodeId);
+		if (!config.isLazy()) {
+			return node;
+		}
+		String path = getMaterializationPath(nodeId);
+		if (path == null) {
+			return node;
+		}
+		if (node != null) {
+			synchronized (modelLock) {
+				//Marks the path as recently used.
+				materializedPaths.get(path);
+			}
+			return node;
+		}
+		if (((String) nodeId.getIdentifier()).startsWith("/")) {
+			return materializeFolder(path);
 		}
+		materializePath(path);
+		return nodes.get(nodeId);
+	}
 
-		return retVal;
+	/**
+	 * @param nodeId A folder or variable node id.
+	 * @return Path of the folder, or of the folder holding the variable, if
+	 * the node belongs to this namespace.
+	 */
+	private String getMaterializationPath(NodeId nodeId) {
+		if (!namespaceIndex.equals(nodeId.getNamespaceIndex())
+				|| !(nodeId.getIdentifier() instanceof String)) {
+			return null;
+		}
+		String id = (String) nodeId.getIdentifier();
+		if (id.startsWith("/")) {
+			String path = id.substring(1);
+			return pathIndex.isFolder(path) ? path : null;
+		}
+		//Child nodes of composite attributes sit further below their folder.
+		int slash = id.lastIndexOf('/');
+		while (slash > 0) {
+			String path = id.substring(0, slash);
+			if (pathIndex.hasBeans(path)) {
+				return path;
+			}
+			slash = path.lastIndexOf('/');
+		}
+		return null;
+	}
+
+	/**
+	 * Lazy mode: builds a folder node and references to its child folders. The
+	 * child folders themselves are built when touched.
+	 *
+	 * @param path Folder path.
+	 * @return The folder node.
+	 */
+	private UaNode materializeFolder(String path) {
+		synchronized (modelLock) {
+			NodeId folderId = getFolderNodeId(path);
+			UaNode folder = nodes.get(folderId);
+			if (folder != null) {
+				return folder;
+			}
+			folder = newFolderNode(path);
+			for (String child : pathIndex.getChildFolders(path)) {
+				addFolderReference(folder, child);
+			}
+			nodes.put(folderId, folder);
+			return folder;
+		}
+	}
+
+	private UaObjectNode newFolderNode(String path) {
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		return UaObjectNode.builder(this)
+				.setNodeId(getFolderNodeId(path))
+				.setBrowseName(new QualifiedName(namespaceIndex, name))
+				.setDisplayName(LocalizedText.english(name))
+				.setTypeDefinition(Identifiers.FolderType)
+				.build();
+	}
+
+	/**
+	 * Resolves a path of browse names, starting below the JMX root folder,
+	 * with one walk of the folder trie. Names past the last folder are taken
+	 * as an attribute, and any composite child below it.
+	 *
+	 * <p>
+	 * The SDK answers TranslateBrowsePathsToNodeIds itself by following
+	 * references, this is for callers that know the path up front.
+	 * </p>
+	 *
+	 * @param browseNames Browse names, such as java, lang, Memory,
+	 * HeapMemoryUsage.
+	 * @return The node at that path.
+	 */
+	public Optional<NodeId> translateBrowsePath(List<String> browseNames) {
+		String path = "";
+		int i = 0;
+		for (; i < browseNames.size(); i++) {
+			String child = pathIndex.getChildFolder(path, browseNames.get(i));
+			if (child == null) {
+				break;
+			}
+			path = child;
+		}
+		NodeId nodeId;
+		if (i == browseNames.size()) {
+			nodeId = getFolderNodeId(path);
+		} else if (path.isEmpty()) {
+			return Optional.empty();
+		} else {
+			nodeId = new NodeId(namespaceIndex,
+					path + "/" + String.join("/", browseNames.subList(i, browseNames.size())));
+		}
+		return Optional.ofNullable(findNode(nodeId)).map(UaNode::getNodeId);
+	}
+
+	private void addFolderReference(UaNode folder, String childPath) {
+		folder.addReference(new Reference(
+				folder.getNodeId(),
+				Identifiers.Organizes,
+				getFolderNodeId(childPath).expanded(),
+				NodeClass.Object,
+				true
+		));
+	}
+
+	/**
+	 * Lazy mode: builds the variable nodes of every MBean in a folder, then
+	 * evicts the least recently used folders over the configured bound.
+	 *
+	 * @param path Folder path.
+	 */
+	private void materializePath(String path) {
+		synchronized (modelLock) {
+			if (materializedPaths.containsKey(path)) {
+				return;
+			}
+			UaNode folder = materializeFolder(path);
+			List<JmxPolledAttribute> attributes = new ArrayList<>();
+			for (ObjectName on : pathIndex.getBeans(path)) {
+				attributes.addAll(registerAttributeNodes(path, folder, on));
+			}
+			materializedPaths.put(path, attributes);
+			LOGGER.debug("Materialized {} attributes for {}", attributes.size(), path);
+			evictColdPaths();
+		}
+	}
+
+	/**
+	 * Drops the nodes of the least recently used folders until the bound is
+	 * met. Folders with monitored attributes are kept.
+	 */
+	private void evictColdPaths() {
+		Iterator<Map.Entry<String, List<JmxPolledAttribute>>> iter
+				= materializedPaths.entrySet().iterator();
+		while (materializedPaths.size() > config.getMaxMaterializedPaths() && iter.hasNext()) {
+			Map.Entry<String, List<JmxPolledAttribute>> e = iter.next();
+			if (e.getValue().stream().anyMatch((jpa) -> jpa.getSubscriptionCount() > 0)) {
+				continue;
+			}
+			iter.remove();
+			e.getValue().stream().forEach((jpa) -> {
+				removeAttributeNode(jpa);
+				attributesByObjectName.remove(jpa.getObjectName());
+			});
+			pathIndex.getBeans(e.getKey()).stream().forEach((on) -> removeMethodNodes(on, null));
+			//Rebuilt, with its child folder references, on next use.
+			nodes.remove(getFolderNodeId(e.getKey()));
+			LOGGER.debug("Evicted {} attributes for {}", e.getValue().size(), e.getKey());
+		}
 	}
 
 	@Override
@@ -313,7 +1152,7 @@ public class JmxNamespace implements UaNamespace {
 	@Override
 	public Optional<UaNode> getNode(NodeId nodeId
 	) {
-		return Optional.ofNullable(nodes.get(nodeId));
+		return Optional.ofNullable(findNode(nodeId));
 	}
 
 	@Override
@@ -338,119 +1177,80 @@ public class JmxNamespace implements UaNamespace {
 		return this.namespaceUri;
 	}
 
-	protected UaObjectNode addFoldersToRoot(String path) {
-		return addFolders(rootFolder, path);
-	}
-
-	protected UaObjectNode addFolders(UaNode root, String path) {
-		if (path.startsWith("/")) {
-			path = path.substring(1, path.length());
-		}
-		String[] elements = path.split("/");
-
-		LinkedList<UaObjectNode> folderNodes = processPathElements(
-				Lists.newArrayList(elements),
-				Lists.newArrayList(),
-				Lists.newLinkedList()
-		);
-
-		UaObjectNode firstNode = folderNodes.getFirst();
-
-		if (!nodes.containsKey(firstNode.getNodeId())) {
-			nodes.put(firstNode.getNodeId(), firstNode);
-
-			nodes.get(root.getNodeId()).addReference(new Reference(
-					root.getNodeId(),
-					Identifiers.Organizes,
-					firstNode.getNodeId().expanded(),
-					firstNode.getNodeClass(),
-					true
-			));
-
-			LOGGER.debug("Added reference: {} -> {}", root.getNodeId(), firstNode.getNodeId());
-		}
-
-		PeekingIterator<UaObjectNode> iterator = Iterators.peekingIterator(folderNodes.iterator());
-
-		while (iterator.hasNext()) {
-			UaObjectNode node = iterator.next();
-
-			nodes.putIfAbsent(node.getNodeId(), node);
-
-			if (iterator.hasNext()) {
-				UaObjectNode next = iterator.peek();
-
-				if (!nodes.containsKey(next.getNodeId())) {
-					nodes.put(next.getNodeId(), next);
-
-					nodes.get(node.getNodeId()).addReference(new Reference(
-							node.getNodeId(),
-							Identifiers.Organizes,
-							next.getNodeId().expanded(),
-							next.getNodeClass(),
-							true
-					));
-
-					LOGGER.debug("Added reference: {} -> {}", node.getNodeId(), next.getNodeId());
+	@Override
+	public void read(ReadContext context, Double maxAge, TimestampsToReturn timestamps, List<ReadValueId> readValueIds
+	) {
+		List<UaNode> readNodes = Lists.newArrayListWithCapacity(readValueIds.size());
+		//Values older than maxAge, or never read, are fetched from JMX first,
+		//on the workers' fetch threads, which then answer the read.
+		double maxAgeMs = maxAge != null ? maxAge : 0;
+		long now = System.currentTimeMillis();
+		List<JmxPolledAttribute> stale = new LinkedList<>();
+		readValueIds.stream().forEach((id) -> {
+			readNodes.add(findNode(id.getNodeId()));
+			if (id.getAttributeId().intValue() == AttributeIds.Value) {
+				JmxPolledAttribute jpa = getPolledAttribute(id.getNodeId());
+				if (jpa != null && getRefreshWorker(jpa.getObjectName()).isStale(jpa, maxAgeMs, now)) {
+					stale.add(jpa);
 				}
 			}
-		}
-
-		return folderNodes.getLast();
-	}
-
-	private LinkedList<UaObjectNode> processPathElements(List<String> elements, List<String> path, LinkedList<UaObjectNode> nodes) {
-		if (elements.size() == 1) {
-			String name = elements.get(0);
-			String prefix = String.join("/", path) + "/";
-			if (!prefix.startsWith("/")) {
-				prefix = "/" + prefix;
-			}
-
-			UaObjectNode node = UaObjectNode.builder(this)
-					.setNodeId(new NodeId(namespaceIndex, prefix + name))
-					.setBrowseName(new QualifiedName(namespaceIndex, name))
-					.setDisplayName(LocalizedText.english(name))
-					.setTypeDefinition(Identifiers.FolderType)
-					.build();
-
-			nodes.add(node);
+		});
 
-			return nodes;
+		if (stale.isEmpty()) {
+			context.complete(readNodeAttributes(readNodes, timestamps, readValueIds));
 		} else {
-			String name = elements.get(0);
-			String prefix = String.join("/", path) + "/";
-			if (!prefix.startsWith("/")) {
-				prefix = "/" + prefix;
-			}
-
-			UaObjectNode node = UaObjectNode.builder(this)
-					.setNodeId(new NodeId(namespaceIndex, prefix + name))
-					.setBrowseName(new QualifiedName(namespaceIndex, name))
-					.setDisplayName(LocalizedText.english(name))
-					.setTypeDefinition(Identifiers.FolderType)
-					.build();
-
-			nodes.add(node);
-			path.add(name);
+			fetch(stale).whenComplete((v, ex) -> {
+				if (ex != null) {
+					LOGGER.warn("On-demand read failed, returning cached values.", ex);
+				}
+				context.complete(readNodeAttributes(readNodes, timestamps, readValueIds));
+			});
+		}
+	}
 
-			return processPathElements(elements.subList(1, elements.size()), path, nodes);
+	/**
+	 * Fetches stale attributes through the workers polling them.
+	 *
+	 * @param stale Attributes to read from JMX.
+	 * @return Completed once every worker has read its attributes.
+	 */
+	private CompletableFuture<Void> fetch(List<JmxPolledAttribute> stale) {
+		if (refreshWorkers.size() == 1) {
+			return getRefreshWorker().fetch(stale);
 		}
+		Map<JmxAttributeRefreshWorker, List<JmxPolledAttribute>> byWorker = new HashMap<>();
+		stale.stream().forEach((jpa) -> byWorker.computeIfAbsent(getRefreshWorker(jpa.getObjectName()),
+				(w) -> new ArrayList<>()).add(jpa));
+		return CompletableFuture.allOf(byWorker.entrySet().stream()
+				.map((e) -> e.getKey().fetch(e.getValue()))
+				.toArray(CompletableFuture[]::new));
 	}
 
-	@Override
-	public void read(ReadContext context, Double maxAge, TimestampsToReturn timestamps, List<ReadValueId> readValueIds
-	) {
+	private List<DataValue> readNodeAttributes(List<UaNode> readNodes, TimestampsToReturn timestamps,
+			List<ReadValueId> readValueIds) {
 		List<DataValue> results = Lists.newArrayListWithCapacity(readValueIds.size());
 
-		readValueIds.stream().forEach((id) -> {
-			UaNode node = nodes.get(id.getNodeId());
+		for (int i = 0; i < readValueIds.size(); i++) {
+			ReadValueId id = readValueIds.get(i);
+			UaNode node = readNodes.get(i);
 
 			if (node != null) {
-				DataValue value = node.readAttribute(
-						id.getAttributeId().intValue(),
-						timestamps,
-						id.getIndexRange());
+				DataValue value = null;
+				if (id.getIndexRange() != null && !id.getIndexRange().isEmpty()
+						&& id.getAttributeId().intValue() == AttributeIds.Value) {
+					//Slice arrays before they are boxed and encoded.
+					JmxPolledAttribute jpa = getPolledAttribute(id.getNodeId());
+					if (jpa != null && jpa.getValueSlot().getKind() == ValueSlot.Kind.ARRAY) {
+						value = ArrayTypeNodeFactory.readIndexRange(jpa.getValueSlot(),
+								((UaVariableNode) node).getValue(), id.getIndexRange());
+					}
+				}
+				if (value == null) {
+					value = node.readAttribute(
+							id.getAttributeId().intValue(),
+							timestamps,
+							id.getIndexRange());
+				}
 
 				if (LOGGER.isTraceEnabled()) {
 					Variant variant = value.getValue();
@@ -463,60 +1263,164 @@ public class JmxNamespace implements UaNamespace {
 			} else {
 				results.add(new DataValue(new StatusCode(StatusCodes.Bad_NodeIdUnknown)));
 			}
-		});
+		}
 
-		context.complete(results);
+		return results;
 	}
 
 	@Override
 	public void write(WriteContext context, List<WriteValue> writeValues
 	) {
-		List<StatusCode> results = Lists.newArrayListWithCapacity(writeValues.size());
+		List<CompletableFuture<StatusCode>> results = Lists.newArrayListWithCapacity(writeValues.size());
 
 		for (WriteValue writeValue : writeValues) {
-			try {
-				UaNode node = Optional.ofNullable(nodes.get(writeValue.getNodeId()))
-						.orElseThrow(() -> new UaException(StatusCodes.Bad_NodeIdUnknown));
+			results.add(writeValue(writeValue));
+		}
+		//Completes once every JMX write finished, without blocking this thread.
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]))
+				.thenRun(() -> context.complete(results.stream()
+						.map(CompletableFuture::join)
+						.collect(Collectors.toList())));
+	}
+
+	private CompletableFuture<StatusCode> writeValue(WriteValue writeValue) {
+		try {
+			UaNode node = Optional.ofNullable(findNode(writeValue.getNodeId()))
+					.orElseThrow(() -> new UaException(StatusCodes.Bad_NodeIdUnknown));
+
+			JmxPolledAttribute jpa = writeValue.getAttributeId().intValue() == AttributeIds.Value
+					? getPolledAttribute(writeValue.getNodeId()) : null;
+			if (jpa != null) {
+				return writeAttribute(jpa, writeValue);
+			}
 
-				node.writeAttribute(
+			node.writeAttribute(
 						server.getNamespaceManager(),
 						writeValue.getAttributeId().intValue(),
 						writeValue.getValue(),
 						writeValue.getIndexRange());
 
-				if (LOGGER.isTraceEnabled()) {
-					Variant variant = writeValue.getValue().getValue();
-					Object o = variant != null ? variant.getValue() : null;
-					LOGGER.trace("Wrote value={} to attributeId={} of {}",
-							o, writeValue.getAttributeId(), writeValue.getNodeId());
-				}
-
-				results.add(StatusCode.GOOD);
-			} catch (UaException e) {
-				results.add(e.getStatusCode());
+			if (LOGGER.isTraceEnabled()) {
+				Variant variant = writeValue.getValue().getValue();
+				Object o = variant != null ? variant.getValue() : null;
+				LOGGER.trace("Wrote value={} to attributeId={} of {}",
+						o, writeValue.getAttributeId(), writeValue.getNodeId());
 			}
+
+			return CompletableFuture.completedFuture(StatusCode.GOOD);
+		} catch (UaException e) {
+			return CompletableFuture.completedFuture(e.getStatusCode());
 		}
-		context.complete(results);
+	}
+
+	/**
+	 * Queues a value write to the JMX attribute behind a node. The node only
+	 * takes the value once JMX accepted it.
+	 */
+	private CompletableFuture<StatusCode> writeAttribute(JmxPolledAttribute jpa, WriteValue writeValue) {
+		if (!AccessLevel.fromMask(jpa.getNode().getAccessLevel()).contains(AccessLevel.CurrentWrite)) {
+			return CompletableFuture.completedFuture(new StatusCode(StatusCodes.Bad_NotWritable));
+		}
+		if (writeValue.getIndexRange() != null && !writeValue.getIndexRange().isEmpty()) {
+			return CompletableFuture.completedFuture(new StatusCode(StatusCodes.Bad_WriteNotSupported));
+		}
+		Variant variant = writeValue.getValue().getValue();
+		Object o = variant != null ? variant.getValue() : null;
+		LOGGER.trace("Writing value={} to {} of {}", o, jpa.getAttributeName(), jpa.getObjectName());
+		return writer.write(jpa, o);
+	}
+
+	/**
+	 * Serves a HistoryReadRaw request for one node from the history store.
+	 *
+	 * <p>
+	 * The SDK has no HistoryRead service for namespaces yet, so this is for
+	 * servers that answer it themselves. Continuation points are not
+	 * supported, a read stops at numValuesPerNode.
+	 * </p>
+	 *
+	 * @param nodeId Variable node id.
+	 * @param startTime Start time, inclusive.
+	 * @param endTime End time, exclusive. Before startTime to read newest
+	 * first.
+	 * @param numValuesPerNode Most values to return, 0 for all.
+	 * @return Samples in the range.
+	 * @throws UaException Bad_HistoryOperationUnsupported if the node keeps no
+	 * history.
+	 */
+	public List<DataValue> historyReadRaw(NodeId nodeId, DateTime startTime, DateTime endTime,
+			int numValuesPerNode) throws UaException {
+		if (historyStore == null) {
+			throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported);
+		}
+		return historyStore.readRaw(nodeId, startTime.getJavaTime(), endTime.getJavaTime(), numValuesPerNode);
+	}
+
+	/**
+	 * Serves a HistoryReadProcessed request for one node from the history
+	 * store.
+	 *
+	 * @param nodeId Variable node id.
+	 * @param startTime Start of the first interval.
+	 * @param endTime End of the last interval.
+	 * @param processingInterval Interval length in milliseconds, 0 for one
+	 * interval.
+	 * @param aggregateType AggregateFunction_Minimum, _Maximum or _Average.
+	 * @return One value per interval.
+	 * @throws UaException Bad_HistoryOperationUnsupported if the node keeps no
+	 * history, Bad_AggregateNotSupported for other aggregates.
+	 * @see #historyReadRaw(NodeId, DateTime, DateTime, int)
+	 */
+	public List<DataValue> historyReadProcessed(NodeId nodeId, DateTime startTime, DateTime endTime,
+			double processingInterval, NodeId aggregateType) throws UaException {
+		if (historyStore == null) {
+			throw new UaException(StatusCodes.Bad_HistoryOperationUnsupported);
+		}
+		return historyStore.readProcessed(nodeId, startTime.getJavaTime(), endTime.getJavaTime(),
+				(long) processingInterval, aggregateType);
 	}
 
 	@Override
 	public void onDataItemsCreated(List<DataItem> dataItems
 	) {
+		dataItems.stream()
+				.filter(this::isValueItem)
+				.forEach(this::subscribe);
 		subscriptionModel.onDataItemsCreated(dataItems);
 	}
 
 	@Override
 	public void onDataItemsModified(List<DataItem> dataItems
 	) {
+		dataItems.stream()
+				.filter(this::isValueItem)
+				.forEach(this::subscribe);
 		subscriptionModel.onDataItemsModified(dataItems);
 	}
 
 	@Override
 	public void onDataItemsDeleted(List<DataItem> dataItems
 	) {
+		dataItems.stream()
+				.filter(this::isValueItem)
+				.forEach((item) -> refreshWorkers.stream().forEach((worker) -> worker.unsubscribe(
+						item.getReadValueId().getNodeId(), item.getId())));
 		subscriptionModel.onDataItemsDeleted(dataItems);
 	}
 
+	/**
+	 * Workers ignore nodes they do not poll, so every shard is told.
+	 */
+	private void subscribe(DataItem item) {
+		refreshWorkers.stream().forEach((worker) -> worker.subscribe(item.getReadValueId().getNodeId(),
+				item.getId(),
+				item.getSamplingInterval()));
+	}
+
+	private boolean isValueItem(DataItem item) {
+		return item.getReadValueId().getAttributeId().intValue() == AttributeIds.Value;
+	}
+
 	@Override
 	public void onMonitoringModeChanged(List<MonitoredItem> monitoredItems
 	) {
@@ -526,7 +1430,7 @@ public class JmxNamespace implements UaNamespace {
 	@Override
 	public Optional<MethodInvocationHandler> getInvocationHandler(NodeId methodId
 	) {
-		UaNode node = nodes.get(methodId);
+		UaNode node = findNode(methodId);
 
 		if (node instanceof UaMethodNode) {
 			return ((UaMethodNode) node).getInvocationHandler();
@@ -538,7 +1442,15 @@ public class JmxNamespace implements UaNamespace {
 	@Override
 	public CompletableFuture<List<Reference>> getReferences(NodeId nodeId
 	) {
-		UaNode node = nodes.get(nodeId);
+		UaNode node = findNode(nodeId);
+		if (node != null && config.isLazy()) {
+			String path = getMaterializationPath(nodeId);
+			if (path != null && pathIndex.hasBeans(path)) {
+				//Browsing a folder needs its variable nodes.
+				materializePath(path);
+				node = nodes.get(nodeId);
+			}
+		}
 
 		if (node != null) {
 			return CompletableFuture.completedFuture(node.getReferences());
@@ -570,4 +1482,60 @@ public class JmxNamespace implements UaNamespace {
 	protected void setTypesToFactories(Map<String, TypeNodeFactory> typesToFactories) {
 		this.typesToFactories = typesToFactories;
 	}
+
+	/**
+	 * Passes node availability from the shared type factories to the worker
+	 * polling the node. Factories may report a node before it is polled, such
+	 * reports are held until the attribute is handed to its worker.
+	 */
+	private final class UnavailableNodeDispatcher implements TypeNodeFactory.UnavailableNodeListener {
+
+		private final Set<UaNode> pending = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public void nodeUnavailable(UaNode node) {
+			JmxPolledAttribute jpa = getPolledAttribute(node.getNodeId());
+			if (jpa != null) {
+				getRefreshWorker(jpa.getObjectName()).nodeUnavailable(node);
+			} else {
+				pending.add(node);
+			}
+		}
+
+		@Override
+		public void nodeAvailable(UaNode node) {
+			pending.remove(node);
+			JmxPolledAttribute jpa = getPolledAttribute(node.getNodeId());
+			if (jpa != null) {
+				getRefreshWorker(jpa.getObjectName()).nodeAvailable(node);
+			}
+		}
+
+		private void polled(JmxPolledAttribute jpa) {
+			if (pending.remove(jpa.getNode())) {
+				getRefreshWorker(jpa.getObjectName()).nodeUnavailable(jpa.getNode());
+			}
+		}
+	}
+
+	/**
+	 * Notified when nodes are added or removed because an MBean was
+	 * registered or unregistered, or a table attribute gained or lost rows.
+	 * The two methods match the NodeAdded and NodeDeleted verbs of an OPC-UA
+	 * GeneralModelChangeEvent.
+	 */
+	public static interface ModelChangeListener {
+
+		/**
+		 * @param parent Node the new nodes are organized under.
+		 * @param added New nodes.
+		 */
+		void nodesAdded(NodeId parent, Collection<NodeId> added);
+
+		/**
+		 * @param parent Node the removed nodes were organized under.
+		 * @param deleted Removed nodes.
+		 */
+		void nodesDeleted(NodeId parent, Collection<NodeId> deleted);
+	}
 }
@@ -0,0 +1,573 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.summitsystemsinc.opc.ua.jmx.types.Deadband;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.ObjectName;
+
+/**
+ * Options for a {@link JmxNamespace}.
+ *
+ * <pre>
+ * JmxNamespaceConfig config = JmxNamespaceConfig.builder()
+ *		.setRefreshMs(500)
+ *		.setLazy(true)
+ *		.include("java.lang:*", null)
+ *		.exclude("java.lang:type=MemoryPool,*", "CollectionUsage*")
+ *		.build();
+ * </pre>
+ *
+ * @author Justin
+ */
+public class JmxNamespaceConfig {
+
+	public static final int DEFAULT_MAX_MATERIALIZED_PATHS = 1000;
+
+	private final int refreshMs;
+	private final boolean subscriptionDriven;
+	private final boolean adaptive;
+	private final int adaptiveMaxMs;
+	private final int refreshThreads;
+	private final int refreshShards;
+	private final boolean virtualThreads;
+	private final boolean lazy;
+	private final int maxMaterializedPaths;
+	private final boolean trackRegistrations;
+	private final Map<AttributePattern, Deadband> deadbands;
+	private final MBeanFilter filter;
+	private final int writeQueueCapacity;
+	private final int discoveryParallelism;
+	private final long discoveryTimeoutMs;
+	private final Path snapshotFile;
+	private final boolean operations;
+	private final List<AttributePattern> operationAllows;
+	private final int operationThreads;
+	private final int operationQueueCapacity;
+	private final long operationTimeoutMs;
+	private final Map<AttributePattern, Integer> operationConcurrency;
+	private final Map<AttributePattern, Integer> historyRetention;
+	private final Map<AttributePattern, Long> derivedWindows;
+
+	private JmxNamespaceConfig(Builder builder) {
+		this.refreshMs = builder.refreshMs;
+		this.subscriptionDriven = builder.subscriptionDriven;
+		this.adaptive = builder.adaptive;
+		this.adaptiveMaxMs = builder.adaptiveMaxMs;
+		this.refreshThreads = builder.refreshThreads;
+		this.refreshShards = builder.refreshShards;
+		this.virtualThreads = builder.virtualThreads;
+		this.lazy = builder.lazy;
+		this.maxMaterializedPaths = builder.maxMaterializedPaths;
+		this.trackRegistrations = builder.trackRegistrations;
+		this.deadbands = Collections.unmodifiableMap(new LinkedHashMap<>(builder.deadbands));
+		this.filter = new MBeanFilter(builder.includes, builder.excludes);
+		this.writeQueueCapacity = builder.writeQueueCapacity;
+		this.discoveryParallelism = builder.discoveryParallelism;
+		this.discoveryTimeoutMs = builder.discoveryTimeoutMs;
+		this.snapshotFile = builder.snapshotFile;
+		this.operations = builder.operations;
+		this.operationAllows = Collections.unmodifiableList(new ArrayList<>(builder.operationAllows));
+		this.operationThreads = builder.operationThreads;
+		this.operationQueueCapacity = builder.operationQueueCapacity;
+		this.operationTimeoutMs = builder.operationTimeoutMs;
+		this.operationConcurrency = Collections.unmodifiableMap(new LinkedHashMap<>(builder.operationConcurrency));
+		this.historyRetention = Collections.unmodifiableMap(new LinkedHashMap<>(builder.historyRetention));
+		this.derivedWindows = Collections.unmodifiableMap(new LinkedHashMap<>(builder.derivedWindows));
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return Default sampling interval, in milliseconds.
+	 */
+	public int getRefreshMs() {
+		return refreshMs;
+	}
+
+	/**
+	 * @return True if only attributes with DataItems are polled.
+	 */
+	public boolean isSubscriptionDriven() {
+		return subscriptionDriven;
+	}
+
+	/**
+	 * @return True if attributes whose value does not change are polled less
+	 * often.
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * @return Longest interval adaptive polling backs off to, in
+	 * milliseconds.
+	 */
+	public int getAdaptiveMaxMs() {
+		return adaptiveMaxMs;
+	}
+
+	/**
+	 * @return Number of threads reading JMX attributes concurrently.
+	 */
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+
+	/**
+	 * @return Number of refresh workers the attributes are split across, by
+	 * ObjectName hash.
+	 */
+	public int getRefreshShards() {
+		return refreshShards;
+	}
+
+	/**
+	 * @return True to read attributes on virtual threads when supported.
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @return True if nodes are only created when a client first touches them.
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * @return In lazy mode, the number of MBean folders whose variable nodes
+	 * are kept before the least recently used are evicted.
+	 */
+	public int getMaxMaterializedPaths() {
+		return maxMaterializedPaths;
+	}
+
+	/**
+	 * @return True if MBeans registered or unregistered after construction are
+	 * added to or removed from the address space.
+	 */
+	public boolean isTrackRegistrations() {
+		return trackRegistrations;
+	}
+
+	/**
+	 * @return Deadbands by the attributes they apply to, in the order they
+	 * were added.
+	 */
+	public Map<AttributePattern, Deadband> getDeadbands() {
+		return deadbands;
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @return Deadband of the first pattern matching the attribute, or null.
+	 */
+	public Deadband getDeadband(ObjectName on, String attributeName) {
+		for (Map.Entry<AttributePattern, Deadband> e : deadbands.entrySet()) {
+			if (e.getKey().matches(on, attributeName)) {
+				return e.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Which MBeans and attributes are exposed.
+	 */
+	public MBeanFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return Number of attributes that may wait to be written to JMX.
+	 */
+	public int getWriteQueueCapacity() {
+		return writeQueueCapacity;
+	}
+
+	/**
+	 * @return Number of getMBeanInfo calls made at once while building the
+	 * address space.
+	 */
+	public int getDiscoveryParallelism() {
+		return discoveryParallelism;
+	}
+
+	/**
+	 * @return How long one getMBeanInfo call may take at startup before its
+	 * MBean is skipped, in milliseconds. Only applies with a parallelism above
+	 * one.
+	 */
+	public long getDiscoveryTimeoutMs() {
+		return discoveryTimeoutMs;
+	}
+
+	/**
+	 * @return File the discovered MBeans are saved to and, on the next start,
+	 * built from. Null to always discover them. Only used when not lazy.
+	 */
+	public Path getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	/**
+	 * @return True if MBean operations are exposed as methods.
+	 */
+	public boolean isOperations() {
+		return operations;
+	}
+
+	/**
+	 * @return Operations that may be exposed, empty for every operation of
+	 * the included MBeans.
+	 */
+	public List<AttributePattern> getOperationAllows() {
+		return operationAllows;
+	}
+
+	/**
+	 * Operations go through the same includes and excludes as attributes, and
+	 * must match an allowed pattern if there are any.
+	 *
+	 * @param on MBean name.
+	 * @param operationName Operation name.
+	 * @return True if the operation is exposed as a method.
+	 */
+	public boolean isOperationExposed(ObjectName on, String operationName) {
+		if (!operations || !filter.isIncluded(on) || !filter.isIncluded(on, operationName)) {
+			return false;
+		}
+		return operationAllows.isEmpty()
+				|| operationAllows.stream().anyMatch((p) -> p.matches(on, operationName));
+	}
+
+	/**
+	 * @return Number of MBean operations running at once.
+	 */
+	public int getOperationThreads() {
+		return operationThreads;
+	}
+
+	/**
+	 * @return Number of MBean operations that may wait for a thread.
+	 */
+	public int getOperationQueueCapacity() {
+		return operationQueueCapacity;
+	}
+
+	/**
+	 * @return Time an MBean operation may take before its call fails, in
+	 * milliseconds, 0 for no limit.
+	 */
+	public long getOperationTimeoutMs() {
+		return operationTimeoutMs;
+	}
+
+	/**
+	 * @return Number of operations of one MBean that may run at once, by the
+	 * MBeans they apply to, in the order they were added.
+	 */
+	public Map<AttributePattern, Integer> getOperationConcurrency() {
+		return operationConcurrency;
+	}
+
+	/**
+	 * @return Number of samples of history kept, by the attributes they apply
+	 * to, in the order they were added. Empty to keep no history.
+	 */
+	public Map<AttributePattern, Integer> getHistoryRetention() {
+		return historyRetention;
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @return Window of the derived values of the first pattern matching the
+	 * attribute, in milliseconds, or 0 for no derived values.
+	 */
+	public long getDerivedWindowMs(ObjectName on, String attributeName) {
+		for (Map.Entry<AttributePattern, Long> e : derivedWindows.entrySet()) {
+			if (e.getKey().matches(on, attributeName)) {
+				return e.getValue();
+			}
+		}
+		return 0;
+	}
+
+	public static class Builder {
+
+		private int refreshMs = JmxAttributeRefreshWorker.DEFAULT_REFRESH_MS;
+		private boolean subscriptionDriven = false;
+		private boolean adaptive = false;
+		private int adaptiveMaxMs = JmxAttributeRefreshWorker.DEFAULT_ADAPTIVE_MAX_MS;
+		private int refreshThreads = JmxAttributeRefreshWorker.DEFAULT_REFRESH_THREADS;
+		private int refreshShards = 1;
+		private boolean virtualThreads = false;
+		private boolean lazy = false;
+		private int maxMaterializedPaths = DEFAULT_MAX_MATERIALIZED_PATHS;
+		private boolean trackRegistrations = true;
+		private final Map<AttributePattern, Deadband> deadbands = new LinkedHashMap<>();
+		private final List<AttributePattern> includes = new ArrayList<>();
+		private final List<AttributePattern> excludes = new ArrayList<>();
+		private int writeQueueCapacity = JmxAttributeWriter.DEFAULT_QUEUE_CAPACITY;
+		private int discoveryParallelism = MBeanInfoDiscovery.DEFAULT_PARALLELISM;
+		private long discoveryTimeoutMs = MBeanInfoDiscovery.DEFAULT_TIMEOUT_MS;
+		private Path snapshotFile;
+		private boolean operations = false;
+		private final List<AttributePattern> operationAllows = new ArrayList<>();
+		private int operationThreads = JmxOperationInvoker.DEFAULT_THREADS;
+		private int operationQueueCapacity = JmxOperationInvoker.DEFAULT_QUEUE_CAPACITY;
+		private long operationTimeoutMs = JmxOperationInvoker.DEFAULT_TIMEOUT_MS;
+		private final Map<AttributePattern, Integer> operationConcurrency = new LinkedHashMap<>();
+		private final Map<AttributePattern, Integer> historyRetention = new LinkedHashMap<>();
+		private final Map<AttributePattern, Long> derivedWindows = new LinkedHashMap<>();
+
+		public Builder setRefreshMs(int refreshMs) {
+			this.refreshMs = refreshMs;
+			return this;
+		}
+
+		public Builder setSubscriptionDriven(boolean subscriptionDriven) {
+			this.subscriptionDriven = subscriptionDriven;
+			return this;
+		}
+
+		public Builder setAdaptive(boolean adaptive) {
+			this.adaptive = adaptive;
+			return this;
+		}
+
+		public Builder setAdaptiveMaxMs(int adaptiveMaxMs) {
+			this.adaptiveMaxMs = adaptiveMaxMs;
+			return this;
+		}
+
+		public Builder setRefreshThreads(int refreshThreads) {
+			this.refreshThreads = refreshThreads;
+			return this;
+		}
+
+		/**
+		 * Splits the attributes of a large namespace across several refresh
+		 * workers, each with its own threads and MBean. All attributes of an
+		 * MBean go to the same worker.
+		 *
+		 * @param refreshShards Number of workers.
+		 * @return This builder.
+		 */
+		public Builder setRefreshShards(int refreshShards) {
+			this.refreshShards = refreshShards;
+			return this;
+		}
+
+		public Builder setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		public Builder setLazy(boolean lazy) {
+			this.lazy = lazy;
+			return this;
+		}
+
+		public Builder setMaxMaterializedPaths(int maxMaterializedPaths) {
+			this.maxMaterializedPaths = maxMaterializedPaths;
+			return this;
+		}
+
+		public Builder setTrackRegistrations(boolean trackRegistrations) {
+			this.trackRegistrations = trackRegistrations;
+			return this;
+		}
+
+		public Builder setDiscoveryParallelism(int discoveryParallelism) {
+			this.discoveryParallelism = discoveryParallelism;
+			return this;
+		}
+
+		public Builder setDiscoveryTimeoutMs(long discoveryTimeoutMs) {
+			this.discoveryTimeoutMs = discoveryTimeoutMs;
+			return this;
+		}
+
+		public Builder setSnapshotFile(Path snapshotFile) {
+			this.snapshotFile = snapshotFile;
+			return this;
+		}
+
+		public Builder setWriteQueueCapacity(int writeQueueCapacity) {
+			this.writeQueueCapacity = writeQueueCapacity;
+			return this;
+		}
+
+		/**
+		 * Exposes MBean operations as methods any session may call. Off by
+		 * default, as operations such as
+		 * <code>HotSpotDiagnostic.dumpHeap</code> write files or change the
+		 * JVM. Without {@link #allowOperations(String, String)} every
+		 * operation of the included MBeans is exposed.
+		 *
+		 * @param operations True to expose operations.
+		 * @return This builder.
+		 */
+		public Builder setOperations(boolean operations) {
+			this.operations = operations;
+			return this;
+		}
+
+		/**
+		 * Exposes matching operations, and only those, as methods.
+		 *
+		 * @param objectNamePattern ObjectName pattern.
+		 * @param operationGlob Operation name glob, null for all.
+		 * @return This builder.
+		 */
+		public Builder allowOperations(String objectNamePattern, String operationGlob) {
+			this.operationAllows.add(AttributePattern.of(objectNamePattern, operationGlob));
+			this.operations = true;
+			return this;
+		}
+
+		public Builder setOperationThreads(int operationThreads) {
+			this.operationThreads = operationThreads;
+			return this;
+		}
+
+		public Builder setOperationQueueCapacity(int operationQueueCapacity) {
+			this.operationQueueCapacity = operationQueueCapacity;
+			return this;
+		}
+
+		public Builder setOperationTimeoutMs(long operationTimeoutMs) {
+			this.operationTimeoutMs = operationTimeoutMs;
+			return this;
+		}
+
+		/**
+		 * Limits how many operations of one matching MBean run at once, calls
+		 * over the limit are rejected. The first matching pattern wins.
+		 *
+		 * @param objectNamePattern ObjectName pattern, such as
+		 * <code>com.sun.management:type=HotSpotDiagnostic</code>.
+		 * @param limit Operations of one MBean running at once.
+		 * @return This builder.
+		 */
+		public Builder setOperationConcurrency(String objectNamePattern, int limit) {
+			this.operationConcurrency.put(AttributePattern.of(objectNamePattern, null), limit);
+			return this;
+		}
+
+		/**
+		 * Keeps the last value changes of matching numeric attributes, for
+		 * history reads. The first matching pattern wins, a retention of 0
+		 * keeps no history.
+		 *
+		 * @param objectNamePattern ObjectName pattern.
+		 * @param attributeGlob Attribute name glob, null for all.
+		 * @param samples Number of samples kept per attribute.
+		 * @return This builder.
+		 */
+		public Builder setHistory(String objectNamePattern, String attributeGlob, int samples) {
+			this.historyRetention.put(AttributePattern.of(objectNamePattern, attributeGlob), samples);
+			return this;
+		}
+
+		/**
+		 * Publishes the rate per second, and the minimum, maximum and average
+		 * over a sliding window, of matching numeric attributes as child
+		 * nodes. Meant for counters such as
+		 * <code>GarbageCollector.CollectionCount</code>. The first matching
+		 * pattern wins, a window of 0 publishes nothing.
+		 *
+		 * @param objectNamePattern ObjectName pattern.
+		 * @param attributeGlob Attribute name glob, null for all.
+		 * @param windowMs Length of the sliding window in milliseconds.
+		 * @return This builder.
+		 */
+		public Builder setDerived(String objectNamePattern, String attributeGlob, long windowMs) {
+			this.derivedWindows.put(AttributePattern.of(objectNamePattern, attributeGlob), windowMs);
+			return this;
+		}
+
+		/**
+		 * Numeric changes of matching attributes smaller than the deadband
+		 * do not update their nodes. The first matching pattern wins.
+		 *
+		 * @param objectNamePattern ObjectName pattern, such as
+		 * <code>java.lang:type=Memory</code>.
+		 * @param attributeGlob Attribute name glob, null for all.
+		 * @param deadband Deadband to apply.
+		 * @return This builder.
+		 */
+		public Builder addDeadband(String objectNamePattern, String attributeGlob, Deadband deadband) {
+			return addDeadband(AttributePattern.of(objectNamePattern, attributeGlob), deadband);
+		}
+
+		public Builder addDeadband(AttributePattern pattern, Deadband deadband) {
+			this.deadbands.put(pattern, deadband);
+			return this;
+		}
+
+		/**
+		 * Only exposes MBeans matching an include. The ObjectName pattern is
+		 * passed to queryNames, so the MBean server does the filtering.
+		 *
+		 * @param objectNamePattern ObjectName pattern, such as
+		 * <code>java.lang:*</code>.
+		 * @param attributeGlob Attributes of those MBeans to expose, null for
+		 * all.
+		 * @return This builder.
+		 */
+		public Builder include(String objectNamePattern, String attributeGlob) {
+			this.includes.add(AttributePattern.of(objectNamePattern, attributeGlob));
+			return this;
+		}
+
+		/**
+		 * Hides matching MBeans, or only the matching attributes of them.
+		 *
+		 * @param objectNamePattern ObjectName pattern.
+		 * @param attributeGlob Attributes to hide, null to hide the whole
+		 * MBean.
+		 * @return This builder.
+		 */
+		public Builder exclude(String objectNamePattern, String attributeGlob) {
+			this.excludes.add(AttributePattern.of(objectNamePattern, attributeGlob));
+			return this;
+		}
+
+		public JmxNamespaceConfig build() {
+			return new JmxNamespaceConfig(this);
+		}
+	}
+}
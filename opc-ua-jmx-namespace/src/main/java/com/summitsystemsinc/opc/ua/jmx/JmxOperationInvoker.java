@@ -0,0 +1,312 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.UaException;
+import com.udojava.jmx.wrapper.JMXBean;
+import com.udojava.jmx.wrapper.JMXBeanAttribute;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeMBeanException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invokes MBean operations off the OPC-UA stack threads.
+ *
+ * <p>
+ * Calls run on a fixed number of threads behind a bounded queue, calls
+ * arriving when the queue is full are rejected. Each call gets a timeout,
+ * after which its caller is answered and the invoking thread interrupted, so
+ * a heap dump or a cache flush never holds up the stack. Calls to MBeans
+ * matching a concurrency limit are rejected while that many calls to the same
+ * MBean are running, timed out calls counting until JMX returns, as a remote
+ * invoke ignores the interrupt.
+ * </p>
+ *
+ * @author Justin
+ */
+@JMXBean(description = "Invokes JMX operations for OPC method calls")
+public class JmxOperationInvoker {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxOperationInvoker.class);
+
+	/**
+	 * Default number of operations running at once.
+	 */
+	public static final int DEFAULT_THREADS = 2;
+	/**
+	 * Default number of operations waiting for a thread.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	/**
+	 * Default time an operation may take, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT_MS = 60000;
+
+	private static final AtomicInteger INVOKER_COUNT = new AtomicInteger();
+
+	private final MBeanServerConnection mBeanServerConnection;
+	private final long timeoutMs;
+	private final Map<AttributePattern, Integer> concurrencyLimits;
+	private final Map<ObjectName, Semaphore> permits = new ConcurrentHashMap<>();
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timer;
+
+	private final AtomicLong invocations = new AtomicLong();
+	private final AtomicLong rejectedInvocations = new AtomicLong();
+	private final AtomicLong timedOutInvocations = new AtomicLong();
+	private final AtomicLong failedInvocations = new AtomicLong();
+
+	public JmxOperationInvoker(MBeanServerConnection mbsc) {
+		this(mbsc, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT_MS,
+				Collections.<AttributePattern, Integer>emptyMap());
+	}
+
+	/**
+	 * @param mbsc Connection to invoke operations on.
+	 * @param threads Number of operations running at once.
+	 * @param queueCapacity Number of operations that may wait for a thread.
+	 * @param timeoutMs Time an operation may take from being queued, in
+	 * milliseconds, 0 for no limit.
+	 * @param concurrencyLimits Number of operations of one MBean running at
+	 * once, by the MBeans they apply to. The first matching pattern wins,
+	 * MBeans matching none are only bound by the thread count.
+	 */
+	public JmxOperationInvoker(MBeanServerConnection mbsc, int threads, int queueCapacity, long timeoutMs,
+			Map<AttributePattern, Integer> concurrencyLimits) {
+		this.mBeanServerConnection = mbsc;
+		this.timeoutMs = timeoutMs;
+		this.concurrencyLimits = Collections.unmodifiableMap(new LinkedHashMap<>(concurrencyLimits));
+		String name = "JMX-UA Operation-" + INVOKER_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		int poolSize = Math.max(1, threads);
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+				(Runnable r) -> {
+					Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		this.timer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+			Thread t = new Thread(r, name + "-Timeout");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Queues an operation call.
+	 *
+	 * @param on MBean name.
+	 * @param operationName Operation name.
+	 * @param params Arguments.
+	 * @param signature Argument class names.
+	 * @return Completes with the operation's return value, or exceptionally
+	 * with a {@link UaException} holding the status to answer with.
+	 */
+	public CompletableFuture<Object> invoke(ObjectName on, String operationName, Object[] params,
+			String[] signature) {
+		CompletableFuture<Object> retVal = new CompletableFuture<>();
+		invocations.incrementAndGet();
+		Semaphore semaphore = getPermits(on);
+		if (semaphore != null && !semaphore.tryAcquire()) {
+			rejectedInvocations.incrementAndGet();
+			retVal.completeExceptionally(new UaException(StatusCodes.Bad_TooManyOperations,
+					"Too many operations running on " + on));
+			return retVal;
+		}
+		//Set by whichever comes first, the task starting or the call timing
+		//out while queued. A started task holds the permit until the JMX
+		//invoke returns, even after its caller was answered.
+		AtomicBoolean claimed = new AtomicBoolean();
+		Future<?> task = null;
+		try {
+			task = executor.submit(() -> {
+				if (!claimed.compareAndSet(false, true)) {
+					return;
+				}
+				Object result = null;
+				Exception failure = null;
+				try {
+					result = mBeanServerConnection.invoke(on, operationName, params, signature);
+				} catch (InstanceNotFoundException | MBeanException | ReflectionException
+						| IOException | RuntimeException ex) {
+					failure = ex;
+				} finally {
+					//Freed before answering, so a caller may call again at once.
+					if (semaphore != null) {
+						semaphore.release();
+					}
+				}
+				if (failure == null) {
+					retVal.complete(result);
+				} else {
+					if (!retVal.isDone()) {
+						LOGGER.warn("Could not invoke {} of {}: {}", operationName, on, failure.getMessage());
+						failedInvocations.incrementAndGet();
+					}
+					retVal.completeExceptionally(new UaException(toStatusCode(failure),
+							String.valueOf(failure.getMessage())));
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			rejectedInvocations.incrementAndGet();
+			if (semaphore != null) {
+				semaphore.release();
+			}
+			retVal.completeExceptionally(new UaException(StatusCodes.Bad_TooManyOperations,
+					"Too many operations waiting."));
+		}
+		if (retVal.isDone() || timeoutMs <= 0) {
+			return retVal;
+		}
+		Future<?> running = task;
+		Future<?> timeout = timer.schedule(() -> {
+			if (retVal.isDone()) {
+				return;
+			}
+			boolean queued = claimed.compareAndSet(false, true);
+			if (queued) {
+				//Never started, so it never will and its permit is free.
+				running.cancel(false);
+				executor.remove((Runnable) running);
+				if (semaphore != null) {
+					semaphore.release();
+				}
+			}
+			//Counted before answering, so the caller sees its own timeout.
+			timedOutInvocations.incrementAndGet();
+			if (retVal.completeExceptionally(new UaException(StatusCodes.Bad_Timeout,
+					operationName + " of " + on + " timed out."))) {
+				if (!queued) {
+					running.cancel(true);
+				}
+			} else {
+				timedOutInvocations.decrementAndGet();
+			}
+		}, timeoutMs, TimeUnit.MILLISECONDS);
+		retVal.whenComplete((v, ex) -> timeout.cancel(false));
+		return retVal;
+	}
+
+	private Semaphore getPermits(ObjectName on) {
+		for (Map.Entry<AttributePattern, Integer> e : concurrencyLimits.entrySet()) {
+			if (e.getKey().matches(on)) {
+				return permits.computeIfAbsent(on, (k) -> new Semaphore(Math.max(1, e.getValue())));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets the concurrency state of an MBean that went away.
+	 *
+	 * @param on MBean name.
+	 */
+	public void removeMBean(ObjectName on) {
+		permits.remove(on);
+	}
+
+	/**
+	 * @param ex Exception thrown by a JMX invoke.
+	 * @return Status reported to the client.
+	 */
+	protected static long toStatusCode(Exception ex) {
+		if (ex instanceof InstanceNotFoundException) {
+			return StatusCodes.Bad_NodeIdUnknown;
+		} else if (ex instanceof ReflectionException
+				|| ex instanceof IllegalArgumentException) {
+			return StatusCodes.Bad_InvalidArgument;
+		} else if (ex instanceof IOException) {
+			return StatusCodes.Bad_CommunicationError;
+		} else if (ex instanceof MBeanException || ex instanceof RuntimeMBeanException) {
+			return StatusCodes.Bad_InternalError;
+		}
+		return StatusCodes.Bad_UnexpectedError;
+	}
+
+	/**
+	 * Stops the invoking threads. Running operations are interrupted.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	@JMXBeanAttribute(description = "Number of operations running.")
+	public int getActiveInvocations() {
+		return executor.getActiveCount();
+	}
+
+	@JMXBeanAttribute(description = "Number of operations waiting for a thread.")
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	@JMXBeanAttribute(description = "Time an operation may take, in milliseconds.")
+	public long getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	@JMXBeanAttribute(description = "Number of operation calls received.")
+	public long getInvocations() {
+		return invocations.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of operation calls rejected by a "
+			+ "full queue or a concurrency limit.")
+	public long getRejectedInvocations() {
+		return rejectedInvocations.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of operation calls that timed out.")
+	public long getTimedOutInvocations() {
+		return timedOutInvocations.get();
+	}
+
+	@JMXBeanAttribute(description = "Number of operation calls that failed.")
+	public long getFailedInvocations() {
+		return failedInvocations.get();
+	}
+}
@@ -0,0 +1,221 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.sdk.server.api.MethodInvocationHandler;
+import com.digitalpetri.opcua.sdk.server.api.UaNamespace;
+import com.digitalpetri.opcua.sdk.server.model.UaMethodNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.UaException;
+import com.digitalpetri.opcua.stack.core.types.builtin.DiagnosticInfo;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
+import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UShort;
+import com.digitalpetri.opcua.stack.core.types.structured.Argument;
+import com.digitalpetri.opcua.stack.core.types.structured.CallMethodRequest;
+import com.digitalpetri.opcua.stack.core.types.structured.CallMethodResult;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+
+/**
+ * An MBean operation exposed as an OPC-UA method. Calls are handed to a
+ * {@link JmxOperationInvoker}, the stack thread returns straight away.
+ *
+ * <p>
+ * Only operations whose parameters and return type are Strings, primitives or
+ * their wrappers are supported. The method NodeId carries the signature, so
+ * overloaded operations get a method each.
+ * </p>
+ *
+ * @author Justin
+ */
+public class JmxOperationMethod implements MethodInvocationHandler {
+
+	private static final int SCALAR = -1;
+	private static final Map<String, NodeId> DATA_TYPES = new HashMap<>();
+
+	static {
+		DATA_TYPES.put("java.lang.String", Identifiers.String);
+		DATA_TYPES.put("boolean", Identifiers.Boolean);
+		DATA_TYPES.put("java.lang.Boolean", Identifiers.Boolean);
+		DATA_TYPES.put("byte", Identifiers.SByte);
+		DATA_TYPES.put("java.lang.Byte", Identifiers.SByte);
+		DATA_TYPES.put("short", Identifiers.Int16);
+		DATA_TYPES.put("java.lang.Short", Identifiers.Int16);
+		DATA_TYPES.put("int", Identifiers.Int32);
+		DATA_TYPES.put("java.lang.Integer", Identifiers.Int32);
+		DATA_TYPES.put("long", Identifiers.Int64);
+		DATA_TYPES.put("java.lang.Long", Identifiers.Int64);
+		DATA_TYPES.put("float", Identifiers.Float);
+		DATA_TYPES.put("java.lang.Float", Identifiers.Float);
+		DATA_TYPES.put("double", Identifiers.Double);
+		DATA_TYPES.put("java.lang.Double", Identifiers.Double);
+	}
+
+	private final JmxOperationInvoker invoker;
+	private final ObjectName objectName;
+	private final MBeanOperationInfo info;
+	private final String[] signature;
+
+	/**
+	 * @param invoker Runs the operation.
+	 * @param on MBean name.
+	 * @param info A supported operation of the MBean.
+	 */
+	public JmxOperationMethod(JmxOperationInvoker invoker, ObjectName on, MBeanOperationInfo info) {
+		this.invoker = invoker;
+		this.objectName = on;
+		this.info = info;
+		this.signature = Arrays.stream(info.getSignature())
+				.map(MBeanParameterInfo::getType)
+				.toArray(String[]::new);
+	}
+
+	/**
+	 * @param info MBean operation.
+	 * @return True if every parameter and the return type map to an OPC-UA
+	 * data type.
+	 */
+	public static boolean isSupported(MBeanOperationInfo info) {
+		if (!isVoid(info.getReturnType()) && !DATA_TYPES.containsKey(info.getReturnType())) {
+			return false;
+		}
+		return Arrays.stream(info.getSignature()).allMatch((p) -> DATA_TYPES.containsKey(p.getType()));
+	}
+
+	private static boolean isVoid(String type) {
+		return "void".equals(type) || "java.lang.Void".equals(type);
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * @param path Folder path of the MBean.
+	 * @return NodeId identifier of the method, such as
+	 * <code>java/lang/Memory/gc()</code>.
+	 */
+	public String getIdentifier(String path) {
+		return path + "/" + info.getName() + "(" + String.join(",", signature) + ")";
+	}
+
+	/**
+	 * @param namespace Namespace the node belongs to.
+	 * @param namespaceIndex Index of that namespace.
+	 * @param path Folder path of the MBean.
+	 * @return A new method node calling this operation.
+	 */
+	public UaMethodNode buildNode(UaNamespace namespace, UShort namespaceIndex, String path) {
+		UaMethodNode.UaMethodNodeBuilder builder = UaMethodNode.builder(namespace)
+				.setNodeId(new NodeId(namespaceIndex, getIdentifier(path)))
+				.setBrowseName(new QualifiedName(namespaceIndex, info.getName()))
+				.setDisplayName(LocalizedText.english(info.getName()));
+		if (info.getDescription() != null) {
+			builder.setDescription(LocalizedText.english(info.getDescription()));
+		}
+		UaMethodNode node = builder.build();
+		MBeanParameterInfo[] params = info.getSignature();
+		Argument[] inputs = new Argument[params.length];
+		for (int i = 0; i < params.length; i++) {
+			inputs[i] = new Argument(params[i].getName(), DATA_TYPES.get(params[i].getType()), SCALAR, null,
+					LocalizedText.english(params[i].getDescription() != null ? params[i].getDescription() : ""));
+		}
+		node.setInputArguments(inputs);
+		if (!isVoid(info.getReturnType())) {
+			node.setOutputArguments(new Argument[]{
+				new Argument("Result", DATA_TYPES.get(info.getReturnType()), SCALAR, null, LocalizedText.english(""))
+			});
+		} else {
+			node.setOutputArguments(new Argument[0]);
+		}
+		node.setInvocationHandler(this);
+		return node;
+	}
+
+	@Override
+	public void invoke(CallMethodRequest request, CompletableFuture<CallMethodResult> result) {
+		Variant[] inputs = request.getInputArguments() != null
+				? request.getInputArguments() : new Variant[0];
+		if (inputs.length < signature.length) {
+			result.complete(failed(StatusCodes.Bad_ArgumentsMissing, null));
+			return;
+		}
+		if (inputs.length > signature.length) {
+			result.complete(failed(StatusCodes.Bad_TooManyArguments, null));
+			return;
+		}
+		Object[] params = new Object[signature.length];
+		StatusCode[] inputResults = new StatusCode[signature.length];
+		boolean valid = true;
+		for (int i = 0; i < signature.length; i++) {
+			params[i] = NumberConversion.convertExact(inputs[i] != null ? inputs[i].getValue() : null, signature[i]);
+			boolean ok = params[i] != null
+					|| (inputs[i] == null || inputs[i].isNull()) && !isPrimitive(signature[i]);
+			inputResults[i] = ok ? StatusCode.GOOD : new StatusCode(StatusCodes.Bad_TypeMismatch);
+			valid &= ok;
+		}
+		if (!valid) {
+			result.complete(failed(StatusCodes.Bad_InvalidArgument, inputResults));
+			return;
+		}
+
+		invoker.invoke(objectName, info.getName(), params, signature).whenComplete((value, ex) -> {
+			if (ex != null) {
+				Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+				long code = cause instanceof UaException
+						? ((UaException) cause).getStatusCode().getValue()
+						: StatusCodes.Bad_UnexpectedError;
+				result.complete(failed(code, inputResults));
+			} else {
+				Variant[] outputs = isVoid(info.getReturnType())
+						? new Variant[0] : new Variant[]{new Variant(value)};
+				result.complete(new CallMethodResult(StatusCode.GOOD, inputResults, new DiagnosticInfo[0], outputs));
+			}
+		});
+	}
+
+	private CallMethodResult failed(long code, StatusCode[] inputResults) {
+		return new CallMethodResult(new StatusCode(code),
+				inputResults != null ? inputResults : new StatusCode[0],
+				new DiagnosticInfo[0], new Variant[0]);
+	}
+
+	private static boolean isPrimitive(String type) {
+		return !type.contains(".");
+	}
+
+	@Override
+	public String toString() {
+		return objectName + " " + info.getName() + "(" + String.join(",", signature) + ")";
+	}
+}
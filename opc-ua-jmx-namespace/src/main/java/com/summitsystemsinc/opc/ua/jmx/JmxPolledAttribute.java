@@ -21,7 +21,19 @@ package com.summitsystemsinc.opc.ua.jmx;
  * #L%
  */
 import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UInteger;
+import com.summitsystemsinc.opc.ua.jmx.types.AbstractTypeNodeFactory;
+import com.summitsystemsinc.opc.ua.jmx.types.Deadband;
+import com.summitsystemsinc.opc.ua.jmx.types.TypeNodeFactory;
+import com.summitsystemsinc.opc.ua.jmx.types.ValueSlot;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.management.ObjectName;
 
 /**
@@ -33,11 +45,91 @@ public class JmxPolledAttribute {
 	private final ObjectName objectName;
 	private final String attributeName;
 	private final UaVariableNode node;
+	/**
+	 * Latest value, used for change detection.
+	 */
+	private final ValueSlot valueSlot;
+	/**
+	 * Factory that built the node, null to update the node directly.
+	 */
+	private final TypeNodeFactory factory;
+	/**
+	 * Numeric changes smaller than this do not update the node, null for
+	 * none.
+	 */
+	private volatile Deadband deadband;
+	/**
+	 * Recent values of this attribute, null if it is not historized.
+	 */
+	private volatile HistoryBuffer history;
+	/**
+	 * Rate and window aggregates published below the node, null for none.
+	 */
+	private volatile DerivedValues derived;
+	/**
+	 * Sampling interval, in milliseconds, requested by each DataItem
+	 * monitoring this attribute's value.
+	 */
+	private final Map<UInteger, Long> requestedSamplingMs = new ConcurrentHashMap<>();
+	private final AtomicBoolean reschedulePending = new AtomicBoolean();
+	/**
+	 * Interval this attribute is currently scheduled at, only touched by the
+	 * {@link SamplingScheduler}.
+	 */
+	private long scheduledIntervalMs;
+	/**
+	 * Adaptive polling: the interval is doubled this many times because the
+	 * value kept not changing.
+	 */
+	private volatile int backoffShift;
+	/**
+	 * Adaptive polling: polls in a row that did not change the value.
+	 */
+	private volatile int unchangedPolls;
+	/**
+	 * When the value was last read from JMX, 0 if it never was.
+	 */
+	private volatile long fetchedMs;
+	/**
+	 * On-demand read currently fetching this attribute, if any.
+	 */
+	private final AtomicReference<CompletableFuture<Void>> inFlightFetch = new AtomicReference<>();
 
 	public JmxPolledAttribute(ObjectName on, String attributeName, UaVariableNode node) {
+		this(on, attributeName, node, new ValueSlot(ValueSlot.Kind.OBJECT));
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @param node Node showing the attribute.
+	 * @param valueSlot Empty slot of the attribute's type. The first value
+	 * polled fills it as read from JMX, primitive arrays included.
+	 */
+	public JmxPolledAttribute(ObjectName on, String attributeName, UaVariableNode node,
+			ValueSlot valueSlot) {
+		this(on, attributeName, node, valueSlot, null);
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @param attributeName Attribute name.
+	 * @param node Node showing the attribute.
+	 * @param factory Factory that built the node, values are applied through
+	 * it.
+	 */
+	public JmxPolledAttribute(ObjectName on, String attributeName, UaVariableNode node,
+			TypeNodeFactory factory) {
+		this(on, attributeName, node, factory.newValueSlot(), factory);
+	}
+
+	private JmxPolledAttribute(ObjectName on, String attributeName, UaVariableNode node,
+			ValueSlot valueSlot, TypeNodeFactory factory) {
 		this.objectName = on;
 		this.attributeName = attributeName;
 		this.node = node;
+		this.valueSlot = valueSlot;
+		this.factory = factory;
 	}
 
 	/**
@@ -61,6 +153,197 @@ public class JmxPolledAttribute {
 		return node;
 	}
 
+	/**
+	 * @return Latest value read from JMX.
+	 */
+	public ValueSlot getValueSlot() {
+		return valueSlot;
+	}
+
+	/**
+	 * @return Factory that built the node, or null.
+	 */
+	public TypeNodeFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * Applies a value read from JMX to the node, through the factory that
+	 * built it.
+	 *
+	 * @param value Value read from JMX.
+	 * @return True if the node was updated.
+	 */
+	public boolean updateValue(Object value) {
+		if (factory != null) {
+			return factory.updateValue(node, valueSlot, deadband, value);
+		}
+		return AbstractTypeNodeFactory.updateNodeValue(node, valueSlot, deadband, value, false);
+	}
+
+	/**
+	 * Applies a value read from JMX even if it equals the latest one, such as
+	 * when the node held a Bad status in between.
+	 *
+	 * @param value Value read from JMX.
+	 * @return True if the node was updated.
+	 */
+	public boolean resetValue(Object value) {
+		synchronized (valueSlot) {
+			valueSlot.clear();
+		}
+		return updateValue(value);
+	}
+
+	/**
+	 * Replaces the node's value with a Bad status, keeping its data type and
+	 * access level.
+	 *
+	 * @param status Status reported to clients.
+	 */
+	public void setUnavailable(StatusCode status) {
+		synchronized (valueSlot) {
+			valueSlot.clear();
+			node.setValue(new DataValue(status));
+		}
+	}
+
+	/**
+	 * @return Deadband of numeric values, or null.
+	 */
+	public Deadband getDeadband() {
+		return deadband;
+	}
+
+	public void setDeadband(Deadband deadband) {
+		this.deadband = deadband;
+	}
+
+	/**
+	 * @return Recent values, or null if not historized.
+	 */
+	public HistoryBuffer getHistory() {
+		return history;
+	}
+
+	public void setHistory(HistoryBuffer history) {
+		this.history = history;
+	}
+
+	/**
+	 * @return Derived value nodes, or null.
+	 */
+	public DerivedValues getDerived() {
+		return derived;
+	}
+
+	public void setDerived(DerivedValues derived) {
+		this.derived = derived;
+	}
+
+	/**
+	 * @return Number of DataItems currently monitoring this attribute.
+	 */
+	public int getSubscriptionCount() {
+		return requestedSamplingMs.size();
+	}
+
+	/**
+	 * @return The fastest sampling interval requested by a DataItem, or 0 if
+	 * nothing is monitoring this attribute.
+	 */
+	public long getRequestedSamplingMs() {
+		return requestedSamplingMs.values().stream()
+				.mapToLong(Long::longValue)
+				.min()
+				.orElse(0);
+	}
+
+	/**
+	 * Adds or updates the sampling interval requested by a DataItem.
+	 *
+	 * @param itemId DataItem id.
+	 * @param samplingMs Requested sampling interval.
+	 */
+	void putSubscription(UInteger itemId, long samplingMs) {
+		requestedSamplingMs.put(itemId, samplingMs);
+	}
+
+	/**
+	 * @param itemId DataItem id.
+	 * @return True if the DataItem was monitoring this attribute.
+	 */
+	boolean removeSubscription(UInteger itemId) {
+		return requestedSamplingMs.remove(itemId) != null;
+	}
+
+	/**
+	 * @return True if the attribute was not already waiting to be
+	 * rescheduled.
+	 */
+	boolean markReschedulePending() {
+		return reschedulePending.compareAndSet(false, true);
+	}
+
+	void clearReschedulePending() {
+		reschedulePending.set(false);
+	}
+
+	long getScheduledIntervalMs() {
+		return scheduledIntervalMs;
+	}
+
+	void setScheduledIntervalMs(long scheduledIntervalMs) {
+		this.scheduledIntervalMs = scheduledIntervalMs;
+	}
+
+	int getBackoffShift() {
+		return backoffShift;
+	}
+
+	void setBackoffShift(int backoffShift) {
+		this.backoffShift = backoffShift;
+	}
+
+	int incrementUnchangedPolls() {
+		return ++unchangedPolls;
+	}
+
+	void resetUnchangedPolls() {
+		this.unchangedPolls = 0;
+	}
+
+	/**
+	 * @return Time, in milliseconds, the value was last read from JMX, or 0 if
+	 * it never was.
+	 */
+	public long getFetchedMs() {
+		return fetchedMs;
+	}
+
+	void setFetchedMs(long fetchedMs) {
+		this.fetchedMs = fetchedMs;
+	}
+
+	/**
+	 * @return The on-demand read currently fetching this attribute, or null.
+	 */
+	CompletableFuture<Void> getInFlightFetch() {
+		return inFlightFetch.get();
+	}
+
+	/**
+	 * @param fetch On-demand read that will fetch this attribute.
+	 * @return True if no other read was already fetching it.
+	 */
+	boolean startFetch(CompletableFuture<Void> fetch) {
+		return inFlightFetch.compareAndSet(null, fetch);
+	}
+
+	void endFetch(CompletableFuture<Void> fetch) {
+		inFlightFetch.compareAndSet(fetch, null);
+	}
+
 	@Override
 	public int hashCode() {
 		int hash = 3;
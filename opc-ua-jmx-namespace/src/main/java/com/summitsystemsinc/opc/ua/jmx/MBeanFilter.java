@@ -0,0 +1,145 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+/**
+ * Decides which MBeans and attributes a namespace exposes.
+ *
+ * <p>
+ * Include patterns are sent to the MBean server as queryNames patterns, so a
+ * remote server only returns the MBeans wanted. Nothing included means
+ * everything is. Excludes are checked locally; an exclude whose attribute
+ * glob is <code>*</code> drops the whole MBean.
+ * </p>
+ *
+ * @author Justin
+ */
+public class MBeanFilter {
+
+	private static final String ALL_ATTRIBUTES = "*";
+
+	private final List<AttributePattern> includes;
+	private final List<AttributePattern> excludes;
+	/**
+	 * Distinct ObjectName patterns of the includes, sent to queryNames.
+	 */
+	private final Set<ObjectName> queries = new LinkedHashSet<>();
+	/**
+	 * True if an include narrows attributes, so each attribute must be
+	 * checked against the includes.
+	 */
+	private final boolean attributeIncludes;
+	private final List<ObjectName> mBeanExcludes = new ArrayList<>();
+	private final List<AttributePattern> attributeExcludes = new ArrayList<>();
+
+	public MBeanFilter(Collection<AttributePattern> includes, Collection<AttributePattern> excludes) {
+		this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+		this.excludes = Collections.unmodifiableList(new ArrayList<>(excludes));
+		this.includes.stream().forEach((p) -> queries.add(p.getObjectNamePattern()));
+		this.attributeIncludes = this.includes.stream()
+				.anyMatch((p) -> !ALL_ATTRIBUTES.equals(p.getAttributeGlob()));
+		this.excludes.stream().forEach((p) -> {
+			if (ALL_ATTRIBUTES.equals(p.getAttributeGlob())) {
+				mBeanExcludes.add(p.getObjectNamePattern());
+			} else {
+				attributeExcludes.add(p);
+			}
+		});
+	}
+
+	public List<AttributePattern> getIncludes() {
+		return includes;
+	}
+
+	public List<AttributePattern> getExcludes() {
+		return excludes;
+	}
+
+	/**
+	 * Queries the MBean server with every include pattern.
+	 *
+	 * @param mbsc Server to query.
+	 * @return Included MBeans, sorted.
+	 * @throws IOException If the server can not be reached.
+	 */
+	public Set<ObjectName> queryNames(MBeanServerConnection mbsc) throws IOException {
+		Set<ObjectName> retVal = new TreeSet<>();
+		if (queries.isEmpty()) {
+			retVal.addAll(mbsc.queryNames(null, null));
+		} else {
+			for (ObjectName query : queries) {
+				retVal.addAll(mbsc.queryNames(query, null));
+			}
+		}
+		retVal.removeIf(this::isExcludedMBean);
+		return retVal;
+	}
+
+	/**
+	 * @param on MBean name.
+	 * @return True if the MBean matches an include, or there are none, and is
+	 * not excluded.
+	 */
+	public boolean isIncluded(ObjectName on) {
+		if (!queries.isEmpty() && queries.stream().noneMatch((q) -> q.apply(on))) {
+			return false;
+		}
+		return !isExcludedMBean(on);
+	}
+
+	private boolean isExcludedMBean(ObjectName on) {
+		for (ObjectName exclude : mBeanExcludes) {
+			if (exclude.apply(on)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param on Included MBean.
+	 * @param attributeName Attribute name.
+	 * @return True if an include matches the attribute, and no exclude does.
+	 */
+	public boolean isIncluded(ObjectName on, String attributeName) {
+		if (attributeIncludes
+				&& includes.stream().noneMatch((p) -> p.matches(on, attributeName))) {
+			return false;
+		}
+		for (AttributePattern exclude : attributeExcludes) {
+			if (exclude.matches(on, attributeName)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
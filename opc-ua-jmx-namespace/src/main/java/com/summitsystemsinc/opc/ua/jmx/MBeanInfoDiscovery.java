@@ -0,0 +1,191 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the MBeanInfo of many MBeans at startup.
+ *
+ * <p>
+ * Against a remote MBean server startup is dominated by getMBeanInfo round
+ * trips, so they are made on a pool of threads. The results are still handed
+ * out in the order of the names, so the address space is built the same way
+ * whatever the parallelism.
+ * </p>
+ *
+ * @author Justin
+ */
+public class MBeanInfoDiscovery {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MBeanInfoDiscovery.class);
+
+	public static final int DEFAULT_PARALLELISM = 1;
+	public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+	private static final AtomicInteger DISCOVERY_COUNT = new AtomicInteger();
+
+	private final MBeanServerConnection mBeanServerConnection;
+	private final int parallelism;
+	private final long timeoutMs;
+
+	/**
+	 * @param mbsc Connection to query.
+	 * @param parallelism Number of getMBeanInfo calls made at once. One makes
+	 * them on the calling thread, without a timeout.
+	 * @param timeoutMs How long one getMBeanInfo call may take before its MBean
+	 * is skipped.
+	 */
+	public MBeanInfoDiscovery(MBeanServerConnection mbsc, int parallelism, long timeoutMs) {
+		this.mBeanServerConnection = mbsc;
+		this.parallelism = Math.max(1, parallelism);
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * Fetches the MBeanInfo of every MBean. MBeans whose info could not be
+	 * fetched in time are logged and skipped.
+	 *
+	 * @param names MBeans, in the order they should be handed out.
+	 * @param consumer Called for each MBean, in order, on the calling thread.
+	 * @return Number of MBeans handed to the consumer.
+	 */
+	public int discover(Collection<ObjectName> names, BiConsumer<ObjectName, MBeanInfo> consumer) {
+		int count = 0;
+		if (parallelism == 1) {
+			for (ObjectName on : names) {
+				try {
+					consumer.accept(on, mBeanServerConnection.getMBeanInfo(on));
+					count++;
+				} catch (InstanceNotFoundException | IntrospectionException | ReflectionException | IOException ex) {
+					LOGGER.warn(ex.getMessage(), ex);
+				}
+			}
+			return count;
+		}
+
+		AtomicInteger threads = new AtomicInteger();
+		String name = "JMX-UA Discovery-" + DISCOVERY_COUNT.incrementAndGet();
+		ExecutorService executor = new ThreadPoolExecutor(parallelism, parallelism,
+				0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(),
+				(Runnable r) -> {
+					Thread t = new Thread(r, name + "-" + threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		List<InfoTask> tasks = new ArrayList<>(names.size());
+		try {
+			for (ObjectName on : names) {
+				InfoTask task = new InfoTask(on);
+				tasks.add(task);
+				executor.execute(task);
+			}
+			int timedOut = 0;
+			for (InfoTask task : tasks) {
+				MBeanInfo info = await(task);
+				if (info != null) {
+					consumer.accept(task.on, info);
+					count++;
+				} else if (task.timedOut) {
+					timedOut++;
+				}
+			}
+			if (timedOut > 0) {
+				LOGGER.warn("Skipped {} MBeans whose MBeanInfo took longer than {}ms.",
+						timedOut, timeoutMs);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted discovering MBeans, {} of {} added.", count, names.size());
+		} finally {
+			executor.shutdownNow();
+		}
+		return count;
+	}
+
+	/**
+	 * Waits for a task, timing it from when it started rather than from when
+	 * it was queued.
+	 */
+	private MBeanInfo await(InfoTask task) throws InterruptedException {
+		long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		while (true) {
+			long started = task.startNanos;
+			long waitNanos = started == 0 ? timeoutNanos : started + timeoutNanos - System.nanoTime();
+			if (started != 0 && waitNanos <= 0 && !task.isDone()) {
+				task.timedOut = true;
+				task.cancel(true);
+				LOGGER.debug("MBeanInfo of {} timed out.", task.on);
+				return null;
+			}
+			try {
+				return task.get(Math.max(1, waitNanos), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException ex) {
+				//Check again, the task may not have been running all along.
+			} catch (ExecutionException ex) {
+				LOGGER.warn(ex.getCause().getMessage(), ex.getCause());
+				return null;
+			} catch (CancellationException ex) {
+				return null;
+			}
+		}
+	}
+
+	private final class InfoTask extends FutureTask<MBeanInfo> {
+
+		private final ObjectName on;
+		private volatile long startNanos;
+		private volatile boolean timedOut;
+
+		private InfoTask(ObjectName on) {
+			super(() -> mBeanServerConnection.getMBeanInfo(on));
+			this.on = on;
+		}
+
+		@Override
+		public void run() {
+			startNanos = System.nanoTime();
+			super.run();
+		}
+	}
+}
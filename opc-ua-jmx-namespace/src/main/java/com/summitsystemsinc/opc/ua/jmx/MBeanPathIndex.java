@@ -0,0 +1,221 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.management.ObjectName;
+
+/**
+ * Folder structure of the MBeans in a namespace, kept as plain strings. Lazy
+ * namespaces build their nodes from it when a client asks for them, and it
+ * tells which folders appear or become empty as MBeans come and go.
+ *
+ * <p>
+ * Folders form a trie keyed by path segment, so a new path is split and
+ * walked once, and browse paths resolve one segment at a time. Every folder is
+ * also kept by its full path for direct lookups.
+ * </p>
+ * <p>
+ * Paths use the same form as {@link JmxNamespace}, without a leading slash,
+ * the empty string being the root folder.
+ * </p>
+ *
+ * @author Justin
+ */
+public class MBeanPathIndex {
+
+	private final Folder root = new Folder(null, "", "");
+	private final Map<String, Folder> folders = new HashMap<>();
+	private int size;
+
+	public MBeanPathIndex() {
+		folders.put("", root);
+	}
+
+	/**
+	 * @param path Folder path.
+	 * @return Path of the folder above it, the root being the empty string.
+	 */
+	public static String getParent(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash);
+	}
+
+	/**
+	 * Adds an MBean, and every folder above it.
+	 *
+	 * @param path Folder path of the MBean.
+	 * @param on MBean name.
+	 * @return Folders that did not exist before, outermost first.
+	 */
+	public synchronized List<String> add(String path, ObjectName on) {
+		List<String> added = new ArrayList<>();
+		Folder folder = folders.get(path);
+		if (folder == null) {
+			folder = root;
+			int start = 0;
+			while (start <= path.length()) {
+				int end = path.indexOf('/', start);
+				if (end < 0) {
+					end = path.length();
+				}
+				String name = path.substring(start, end);
+				Folder child = folder.children.get(name);
+				if (child == null) {
+					child = new Folder(folder, name, path.substring(0, end));
+					folder.children.put(name, child);
+					folders.put(child.path, child);
+					added.add(child.path);
+				}
+				folder = child;
+				start = end + 1;
+			}
+		}
+		if (folder.beans == null) {
+			folder.beans = new TreeSet<>();
+		}
+		if (folder.beans.add(on)) {
+			size++;
+		}
+		return added;
+	}
+
+	/**
+	 * @param path Folder path of the MBean.
+	 * @param on MBean name.
+	 * @return True if the MBean is in the index.
+	 */
+	public synchronized boolean contains(String path, ObjectName on) {
+		Folder folder = folders.get(path);
+		return folder != null && folder.beans != null && folder.beans.contains(on);
+	}
+
+	/**
+	 * Removes an MBean, and every folder left empty by it.
+	 *
+	 * @param path Folder path of the MBean.
+	 * @param on MBean name.
+	 * @return Folders left empty and removed, innermost first.
+	 */
+	public synchronized List<String> remove(String path, ObjectName on) {
+		List<String> removed = new ArrayList<>();
+		Folder folder = folders.get(path);
+		if (folder == null || folder.beans == null || !folder.beans.remove(on)) {
+			return removed;
+		}
+		size--;
+		if (folder.beans.isEmpty()) {
+			folder.beans = null;
+		}
+		while (folder != root && folder.beans == null && folder.children.isEmpty()) {
+			folder.parent.children.remove(folder.name);
+			folders.remove(folder.path);
+			removed.add(folder.path);
+			folder = folder.parent;
+		}
+		return removed;
+	}
+
+	/**
+	 * @param path Folder path.
+	 * @return True if the folder exists.
+	 */
+	public synchronized boolean isFolder(String path) {
+		return folders.containsKey(path);
+	}
+
+	/**
+	 * @param path Folder path.
+	 * @return Paths of the folders directly below it.
+	 */
+	public synchronized Set<String> getChildFolders(String path) {
+		Set<String> retVal = new TreeSet<>();
+		Folder folder = folders.get(path);
+		if (folder != null) {
+			folder.children.values().stream().forEach((child) -> retVal.add(child.path));
+		}
+		return retVal;
+	}
+
+	/**
+	 * One step of a browse path walk.
+	 *
+	 * @param path Folder path.
+	 * @param name Browse name of a folder directly below it.
+	 * @return Path of that folder, or null if there is none.
+	 */
+	public synchronized String getChildFolder(String path, String name) {
+		Folder folder = folders.get(path);
+		Folder child = folder != null ? folder.children.get(name) : null;
+		return child != null ? child.path : null;
+	}
+
+	/**
+	 * @param path Folder path.
+	 * @return True if MBean attributes live directly in this folder.
+	 */
+	public synchronized boolean hasBeans(String path) {
+		Folder folder = folders.get(path);
+		return folder != null && folder.beans != null;
+	}
+
+	/**
+	 * @param path Folder path.
+	 * @return MBeans whose attributes live directly in this folder.
+	 */
+	public synchronized Set<ObjectName> getBeans(String path) {
+		Folder folder = folders.get(path);
+		return new TreeSet<>(folder != null && folder.beans != null
+				? folder.beans : Collections.<ObjectName>emptySet());
+	}
+
+	/**
+	 * @return Number of MBeans in the index.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private static final class Folder {
+
+		private final Folder parent;
+		private final String name;
+		private final String path;
+		private final Map<String, Folder> children = new TreeMap<>();
+		/**
+		 * MBeans in this folder, null if none.
+		 */
+		private Set<ObjectName> beans;
+
+		private Folder(Folder parent, String name, String path) {
+			this.parent = parent;
+			this.name = name;
+			this.path = path;
+		}
+	}
+}
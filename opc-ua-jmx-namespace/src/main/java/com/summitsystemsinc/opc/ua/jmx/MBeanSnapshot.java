@@ -0,0 +1,292 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Binary file of the MBeans a namespace was built from, so a restart can
+ * build the same address space without asking the MBean server first.
+ *
+ * <p>
+ * Only what the address space needs is kept: ObjectNames, class names, each
+ * attribute's name, type and access, and each operation's name, return type
+ * and parameters. NodeIds follow from those. Strings
+ * are written once and referred to by index afterwards, since attribute
+ * types and class names repeat a lot. The file is read memory-mapped.
+ * </p>
+ *
+ * @author Justin
+ */
+public class MBeanSnapshot {
+
+	private static final int MAGIC = 0x4A4D5855;
+	private static final int VERSION = 2;
+
+	private static final int READABLE = 1;
+	private static final int WRITABLE = 2;
+	private static final int IS = 4;
+
+	private final Path file;
+
+	/**
+	 * @param file Snapshot file.
+	 */
+	public MBeanSnapshot(Path file) {
+		this.file = file;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return True if there is a snapshot to read.
+	 */
+	public boolean exists() {
+		return Files.isRegularFile(file);
+	}
+
+	/**
+	 * Reads the snapshot.
+	 *
+	 * @return MBeans, in the order they were written.
+	 * @throws IOException If the file can not be read, or is not a snapshot
+	 * of this version.
+	 */
+	public Map<ObjectName, MBeanInfo> read() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException(file + " is not a snapshot of this version.");
+			}
+			List<String> strings = new ArrayList<>();
+			int beans = readVarInt(buffer);
+			Map<ObjectName, MBeanInfo> retVal = new LinkedHashMap<>(beans * 2);
+			for (int i = 0; i < beans; i++) {
+				ObjectName on = new ObjectName(readString(buffer, strings));
+				String className = readString(buffer, strings);
+				MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[readVarInt(buffer)];
+				for (int a = 0; a < attributes.length; a++) {
+					String name = readString(buffer, strings);
+					String type = readString(buffer, strings);
+					int flags = buffer.get();
+					attributes[a] = new MBeanAttributeInfo(name, type, null,
+							(flags & READABLE) != 0, (flags & WRITABLE) != 0, (flags & IS) != 0);
+				}
+				MBeanOperationInfo[] operations = new MBeanOperationInfo[readVarInt(buffer)];
+				for (int o = 0; o < operations.length; o++) {
+					String name = readString(buffer, strings);
+					String returnType = readString(buffer, strings);
+					MBeanParameterInfo[] signature = new MBeanParameterInfo[readVarInt(buffer)];
+					for (int p = 0; p < signature.length; p++) {
+						signature[p] = new MBeanParameterInfo(readString(buffer, strings),
+								readString(buffer, strings), null);
+					}
+					operations[o] = new MBeanOperationInfo(name, null, signature, returnType,
+							MBeanOperationInfo.UNKNOWN);
+				}
+				retVal.put(on, new MBeanInfo(className, null, attributes, null, operations, null));
+			}
+			return retVal;
+		} catch (MalformedObjectNameException | BufferUnderflowException
+				| IndexOutOfBoundsException | IllegalArgumentException ex) {
+			throw new IOException(file + " is corrupt.", ex);
+		}
+	}
+
+	/**
+	 * Replaces the snapshot. The file is written next to it first and moved
+	 * in place, so a crash never leaves half a snapshot.
+	 *
+	 * @param mBeans MBeans to write, in the order they should be read back.
+	 * @throws IOException If the file can not be written.
+	 */
+	public void write(Map<ObjectName, MBeanInfo> mBeans) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+				Map<String, Integer> strings = new HashMap<>();
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeVarInt(out, mBeans.size());
+				for (Map.Entry<ObjectName, MBeanInfo> e : mBeans.entrySet()) {
+					writeString(out, strings, e.getKey().getCanonicalName());
+					writeString(out, strings, e.getValue().getClassName());
+					MBeanAttributeInfo[] attributes = e.getValue().getAttributes();
+					writeVarInt(out, attributes.length);
+					for (MBeanAttributeInfo info : attributes) {
+						writeString(out, strings, info.getName());
+						writeString(out, strings, info.getType());
+						out.writeByte((info.isReadable() ? READABLE : 0)
+								| (info.isWritable() ? WRITABLE : 0)
+								| (info.isIs() ? IS : 0));
+					}
+					MBeanOperationInfo[] operations = e.getValue().getOperations();
+					writeVarInt(out, operations.length);
+					for (MBeanOperationInfo info : operations) {
+						writeString(out, strings, info.getName());
+						writeString(out, strings, info.getReturnType());
+						MBeanParameterInfo[] signature = info.getSignature();
+						writeVarInt(out, signature.length);
+						for (MBeanParameterInfo param : signature) {
+							writeString(out, strings, param.getName());
+							writeString(out, strings, param.getType());
+						}
+					}
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * @param a MBean info.
+	 * @param b Other MBean info.
+	 * @return True if both would build the same nodes: same class, same
+	 * attributes, in the same order, with the same types and access, and the
+	 * same operation signatures.
+	 */
+	public static boolean isEquivalent(MBeanInfo a, MBeanInfo b) {
+		MBeanAttributeInfo[] aa = a.getAttributes();
+		MBeanAttributeInfo[] ba = b.getAttributes();
+		if (!Objects.equals(a.getClassName(), b.getClassName()) || aa.length != ba.length) {
+			return false;
+		}
+		for (int i = 0; i < aa.length; i++) {
+			if (!aa[i].getName().equals(ba[i].getName())
+					|| !Objects.equals(aa[i].getType(), ba[i].getType())
+					|| aa[i].isReadable() != ba[i].isReadable()
+					|| aa[i].isWritable() != ba[i].isWritable()) {
+				return false;
+			}
+		}
+		MBeanOperationInfo[] ao = a.getOperations();
+		MBeanOperationInfo[] bo = b.getOperations();
+		if (ao.length != bo.length) {
+			return false;
+		}
+		for (int i = 0; i < ao.length; i++) {
+			MBeanParameterInfo[] as = ao[i].getSignature();
+			MBeanParameterInfo[] bs = bo[i].getSignature();
+			if (!ao[i].getName().equals(bo[i].getName())
+					|| !Objects.equals(ao[i].getReturnType(), bo[i].getReturnType())
+					|| as.length != bs.length) {
+				return false;
+			}
+			for (int p = 0; p < as.length; p++) {
+				if (!Objects.equals(as[p].getType(), bs[p].getType())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Strings are written once, later occurrences are their index. Index 0
+	 * is null, 1 a new string that follows and anything above that the
+	 * string at index - 2.
+	 */
+	private static void writeString(DataOutputStream out, Map<String, Integer> strings, String s)
+			throws IOException {
+		if (s == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		Integer index = strings.get(s);
+		if (index != null) {
+			writeVarInt(out, index + 2);
+			return;
+		}
+		strings.put(s, strings.size());
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, 1);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer, List<String> strings) {
+		int index = readVarInt(buffer);
+		if (index == 0) {
+			return null;
+		}
+		if (index > 1) {
+			return strings.get(index - 2);
+		}
+		byte[] bytes = new byte[readVarInt(buffer)];
+		buffer.get(bytes);
+		String s = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(s);
+		return s;
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed length.");
+	}
+}
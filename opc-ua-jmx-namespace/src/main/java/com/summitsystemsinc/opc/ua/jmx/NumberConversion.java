@@ -0,0 +1,145 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.math.BigDecimal;
+
+/**
+ * Converts values to the Java type of a JMX attribute or parameter, given
+ * by its class name.
+ *
+ * @author Justin
+ */
+final class NumberConversion {
+
+	private static final double LONG_RANGE = 0x1p63;
+
+	private NumberConversion() {
+	}
+
+	/**
+	 * Converts a client supplied value. Integer types only take whole
+	 * numbers in their range, so 300 is not a byte and 3.9 not an int.
+	 * Floating types take any number in their range, rounded to the nearest
+	 * value they hold.
+	 *
+	 * @param value Value to convert.
+	 * @param type Class name, such as <code>int</code> or
+	 * <code>java.lang.Long</code>.
+	 * @return The converted value, or null if it does not fit the type.
+	 */
+	static Object convertExact(Object value, String type) {
+		if (value == null) {
+			return null;
+		}
+		switch (type) {
+			case "java.lang.String":
+				return value instanceof String ? value : null;
+			case "boolean":
+			case "java.lang.Boolean":
+				return value instanceof Boolean ? value : null;
+			default:
+				break;
+		}
+		if (!(value instanceof Number)) {
+			return null;
+		}
+		Number n = (Number) value;
+		switch (type) {
+			case "float":
+			case "java.lang.Float":
+				double d = n.doubleValue();
+				return Double.isFinite(d) && Math.abs(d) > Float.MAX_VALUE ? null : (Object) (float) d;
+			case "double":
+			case "java.lang.Double":
+				return n.doubleValue();
+			default:
+				break;
+		}
+		BigDecimal exact = toBigDecimal(n);
+		if (exact == null) {
+			return null;
+		}
+		try {
+			switch (type) {
+				case "byte":
+				case "java.lang.Byte":
+					return exact.byteValueExact();
+				case "short":
+				case "java.lang.Short":
+					return exact.shortValueExact();
+				case "int":
+				case "java.lang.Integer":
+					return exact.intValueExact();
+				case "long":
+				case "java.lang.Long":
+					return exact.longValueExact();
+				default:
+					return null;
+			}
+		} catch (ArithmeticException ex) {
+			return null;
+		}
+	}
+
+	private static BigDecimal toBigDecimal(Number n) {
+		if (n instanceof Double || n instanceof Float) {
+			double d = n.doubleValue();
+			return Double.isFinite(d) ? new BigDecimal(d) : null;
+		}
+		try {
+			return new BigDecimal(n.toString());
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Converts an aggregate of samples, computed as a double, back to its
+	 * attribute's type. The samples were read from an attribute of that type,
+	 * so narrowing only drops precision the double could not hold.
+	 *
+	 * @param value Sample value.
+	 * @param type Class name of the attribute.
+	 * @return The value as that type, or the double for other types.
+	 */
+	static Object narrow(double value, String type) {
+		switch (type) {
+			case "byte":
+			case "java.lang.Byte":
+				return (byte) value;
+			case "short":
+			case "java.lang.Short":
+				return (short) value;
+			case "int":
+			case "java.lang.Integer":
+				return (int) value;
+			case "long":
+			case "java.lang.Long":
+				return value >= LONG_RANGE ? Long.MAX_VALUE : (long) value;
+			case "float":
+			case "java.lang.Float":
+				return (float) value;
+			default:
+				return value;
+		}
+	}
+}
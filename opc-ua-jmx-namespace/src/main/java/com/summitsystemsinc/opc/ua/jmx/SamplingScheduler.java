@@ -0,0 +1,217 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+import javax.management.ObjectName;
+
+/**
+ * Schedules polled attributes by sampling interval.
+ *
+ * <p>
+ * Attributes sharing an interval are kept in one bucket, grouped by MBean, so
+ * a tick only looks at one deadline per distinct interval instead of one per
+ * attribute. Bucket deadlines are aligned to multiples of their interval, so
+ * buckets that are due on the same tick are read together.
+ * </p>
+ * <p>
+ * Interval changes may be requested from any thread, but are only applied by
+ * the thread calling {@link #tick(long, BiConsumer)}.
+ * </p>
+ *
+ * @author Justin
+ */
+public class SamplingScheduler {
+
+	private final int tickMs;
+	private final ToLongFunction<JmxPolledAttribute> intervalFunction;
+	private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+	private final Queue<JmxPolledAttribute> pending = new ConcurrentLinkedQueue<>();
+	private final List<Bucket> dueBuckets = new ArrayList<>();
+
+	/**
+	 * @param tickMs Scheduler resolution, intervals are rounded up to a
+	 * multiple of this.
+	 * @param intervalFunction Returns the wanted sampling interval of an
+	 * attribute in milliseconds, or 0 to stop polling it.
+	 */
+	public SamplingScheduler(int tickMs, ToLongFunction<JmxPolledAttribute> intervalFunction) {
+		this.tickMs = tickMs;
+		this.intervalFunction = intervalFunction;
+	}
+
+	/**
+	 * Requests the attribute be (re)scheduled with its current interval.
+	 *
+	 * @param jpa Attribute whose interval may have changed.
+	 */
+	public void schedule(JmxPolledAttribute jpa) {
+		if (jpa.markReschedulePending()) {
+			pending.add(jpa);
+		}
+	}
+
+	/**
+	 * @return The scheduler resolution in milliseconds.
+	 */
+	public int getTickMs() {
+		return tickMs;
+	}
+
+	/**
+	 * Rounds a requested interval up to the scheduler resolution.
+	 *
+	 * @param intervalMs Requested interval.
+	 * @return Interval that will be used, never less than one tick.
+	 */
+	public long roundInterval(long intervalMs) {
+		if (intervalMs <= tickMs) {
+			return tickMs;
+		}
+		return ((intervalMs + tickMs - 1) / tickMs) * tickMs;
+	}
+
+	/**
+	 * @return Number of distinct sampling intervals in use.
+	 */
+	public synchronized int getNumberIntervals() {
+		return buckets.size();
+	}
+
+	/**
+	 * @return Sampling intervals in use and the number of attributes in each.
+	 */
+	public synchronized Map<Long, Integer> getIntervalSizes() {
+		Map<Long, Integer> retVal = new TreeMap<>();
+		buckets.values().stream().forEach((b) -> {
+			retVal.put(b.intervalMs, b.size);
+		});
+		return retVal;
+	}
+
+	/**
+	 * @return Earliest time a bucket is due, in milliseconds, or
+	 * {@link Long#MAX_VALUE} if nothing is scheduled.
+	 */
+	public synchronized long getNextDueMs() {
+		long retVal = Long.MAX_VALUE;
+		for (Bucket b : buckets.values()) {
+			retVal = Math.min(retVal, b.nextDueMs);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Applies pending interval changes and passes every due attribute to the
+	 * reader, one call per MBean.
+	 *
+	 * @param nowMs Current time in milliseconds.
+	 * @param reader Reads the attributes of one MBean.
+	 * @return Number of attributes passed to the reader.
+	 */
+	public int tick(long nowMs, BiConsumer<ObjectName, Collection<JmxPolledAttribute>> reader) {
+		synchronized (this) {
+			applyPending(nowMs);
+			dueBuckets.clear();
+			buckets.values().stream()
+					.filter((b) -> b.nextDueMs <= nowMs)
+					.forEach(dueBuckets::add);
+			dueBuckets.stream().forEach((b) -> {
+				b.nextDueMs = (nowMs / b.intervalMs + 1) * b.intervalMs;
+			});
+		}
+
+		int count = dueBuckets.stream().mapToInt((b) -> b.size).sum();
+		if (dueBuckets.size() == 1) {
+			dueBuckets.get(0).byObjectName.forEach(reader);
+		} else if (dueBuckets.size() > 1) {
+			Map<ObjectName, List<JmxPolledAttribute>> merged = new HashMap<>();
+			dueBuckets.stream().forEach((b) -> {
+				b.byObjectName.forEach((on, group) -> {
+					merged.computeIfAbsent(on, (k) -> new ArrayList<>(group.size())).addAll(group);
+				});
+			});
+			merged.forEach(reader);
+		}
+		return count;
+	}
+
+	private void applyPending(long nowMs) {
+		JmxPolledAttribute jpa;
+		while ((jpa = pending.poll()) != null) {
+			jpa.clearReschedulePending();
+			long wanted = intervalFunction.applyAsLong(jpa);
+			wanted = wanted > 0 ? roundInterval(wanted) : 0;
+			long current = jpa.getScheduledIntervalMs();
+			if (wanted == current) {
+				continue;
+			}
+			if (current > 0) {
+				Bucket old = buckets.get(current);
+				if (old.remove(jpa) == 0) {
+					buckets.remove(current);
+				}
+			}
+			if (wanted > 0) {
+				buckets.computeIfAbsent(wanted, (i) -> new Bucket(i, nowMs)).add(jpa);
+			}
+			jpa.setScheduledIntervalMs(wanted);
+		}
+	}
+
+	private static final class Bucket {
+
+		private final long intervalMs;
+		private final Map<ObjectName, List<JmxPolledAttribute>> byObjectName = new HashMap<>();
+		private long nextDueMs;
+		private int size;
+
+		private Bucket(long intervalMs, long nowMs) {
+			this.intervalMs = intervalMs;
+			this.nextDueMs = nowMs;
+		}
+
+		private void add(JmxPolledAttribute jpa) {
+			byObjectName.computeIfAbsent(jpa.getObjectName(), (on) -> new ArrayList<>()).add(jpa);
+			size++;
+		}
+
+		private int remove(JmxPolledAttribute jpa) {
+			List<JmxPolledAttribute> group = byObjectName.get(jpa.getObjectName());
+			if (group != null && group.remove(jpa)) {
+				size--;
+				if (group.isEmpty()) {
+					byObjectName.remove(jpa.getObjectName());
+				}
+			}
+			return size;
+		}
+	}
+}
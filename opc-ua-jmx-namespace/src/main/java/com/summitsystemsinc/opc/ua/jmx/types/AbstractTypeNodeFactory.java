@@ -22,32 +22,31 @@ package com.summitsystemsinc.opc.ua.jmx.types;
  */
 import com.digitalpetri.opcua.sdk.core.AccessLevel;
 import com.digitalpetri.opcua.sdk.server.api.UaNamespace;
-import com.digitalpetri.opcua.sdk.server.model.AttributeObserver;
 import com.digitalpetri.opcua.sdk.server.model.UaNode;
 import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
 import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
 import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
 import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
 import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
 import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
 import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
 import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UShort;
 import static com.digitalpetri.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.WeakHashMap;
-import javax.management.Attribute;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
-import javax.management.InvalidAttributeValueException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
-import javax.management.RuntimeMBeanException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +58,11 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractTypeNodeFactory.class);
 
+	/**
+	 * Status of nodes whose JMX attribute threw when read.
+	 */
+	public static final long UNAVAILABLE_STATUS = StatusCodes.Bad_OutOfService;
+
 	public static void setNodeValue(
 			ObjectName on,
 			String attributeName,
@@ -68,7 +72,21 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 			throws InstanceNotFoundException, MBeanException,
 			AttributeNotFoundException, ReflectionException, IOException {
 		final Object attributeValue = mbsc.getAttribute(on, attributeName);
-		
+		updateNodeValue(node, attributeValue, force);
+	}
+
+	/**
+	 * Applies an already fetched JMX attribute value to the node, only
+	 * touching the node when the value actually changed (or if forced).
+	 *
+	 * @param node Node to update.
+	 * @param attributeValue Value read from JMX.
+	 * @param force Always update the node, even if the value is unchanged.
+	 */
+	public static void updateNodeValue(
+			UaVariableNode node,
+			Object attributeValue,
+			boolean force) {
 		if (force) {
 			forceNodeValue(node, attributeValue);
 			//This is ugly... can we do something better?
@@ -83,17 +101,64 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 		}
 	}
 
-	private static void forceNodeValue(UaVariableNode node, final Object attributeValue) {
+	/**
+	 * Applies an already fetched JMX attribute value to the node. Change
+	 * detection uses the slot, so unchanged values do not touch the node's
+	 * DataValue.
+	 *
+	 * @param node Node to update.
+	 * @param slot Latest value of the node.
+	 * @param attributeValue Value read from JMX.
+	 * @param force Always update the node, even if the value is unchanged.
+	 * @return True if the node was updated.
+	 */
+	public static boolean updateNodeValue(
+			UaVariableNode node,
+			ValueSlot slot,
+			Object attributeValue,
+			boolean force) {
+		return updateNodeValue(node, slot, null, attributeValue, force);
+	}
+
+	/**
+	 * Applies an already fetched JMX attribute value to the node, unless it
+	 * is numeric and within the deadband of the node's value.
+	 *
+	 * @param node Node to update.
+	 * @param slot Latest value of the node.
+	 * @param deadband Deadband of numeric values, or null for none.
+	 * @param attributeValue Value read from JMX.
+	 * @param force Always update the node, even if the value is unchanged.
+	 * @return True if the node was updated.
+	 */
+	public static boolean updateNodeValue(
+			UaVariableNode node,
+			ValueSlot slot,
+			Deadband deadband,
+			Object attributeValue,
+			boolean force) {
+		synchronized (slot) {
+			if (slot.update(attributeValue, deadband) || force) {
+				LOGGER.trace("Node \"{}\" change, updating to: {}", node.getNodeId(), attributeValue);
+				forceNodeValue(node, attributeValue);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	protected static void forceNodeValue(UaVariableNode node, final Object attributeValue) {
 		node.setValue(new DataValue(new Variant(attributeValue)));
 	}
 
 	private UaNamespace namespace;
 	private MBeanServerConnection mBeanServerConnection;
 	private UShort namespaceIndex;
-	private final Set<AttributeObserver> observers = new HashSet<>();
 	private final Set<UnavailableNodeListener> unavailableNodeListeners
 			= Collections.newSetFromMap(new WeakHashMap<UnavailableNodeListener, Boolean>());
 	private final Set<UaNode> unavailableNodes = new HashSet<>();
+	private final Set<ChildNodeListener> childNodeListeners
+			= Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ChildNodeListener, Boolean>()));
 
 	/**
 	 * @return the mBeanServerConnection
@@ -142,6 +207,40 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 		this.unavailableNodeListeners.add(l);
 	}
 
+	@Override
+	public void addChildNodeListener(ChildNodeListener l) {
+		this.childNodeListeners.add(l);
+	}
+
+	@Override
+	public void removeChildNodeListener(ChildNodeListener l) {
+		this.childNodeListeners.remove(l);
+	}
+
+	/**
+	 * @param parent Node the new nodes are components of.
+	 * @param added Nodes just added to the namespace.
+	 */
+	protected void notifyChildNodesAdded(NodeId parent, Collection<NodeId> added) {
+		if (!added.isEmpty()) {
+			synchronized (childNodeListeners) {
+				childNodeListeners.stream().forEach((l) -> l.childNodesAdded(parent, added));
+			}
+		}
+	}
+
+	/**
+	 * @param parent Node the removed nodes were components of.
+	 * @param deleted Nodes just removed from the namespace.
+	 */
+	protected void notifyChildNodesDeleted(NodeId parent, Collection<NodeId> deleted) {
+		if (!deleted.isEmpty()) {
+			synchronized (childNodeListeners) {
+				childNodeListeners.stream().forEach((l) -> l.childNodesDeleted(parent, deleted));
+			}
+		}
+	}
+
 	/**
 	 * @param namespace the namespace to set
 	 */
@@ -154,7 +253,13 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 		return buildNodeWithType(path, on, info, type, true);
 	}
 
-	private void notifyNodeAvailable(UaNode node) {
+	/**
+	 * For factories that learn about attribute availability themselves.
+	 * Attributes that throw when polled are reported by the refresh worker.
+	 *
+	 * @param node Node whose attribute can be read again.
+	 */
+	protected void notifyNodeAvailable(UaNode node) {
 		if (unavailableNodes.contains(node)) {
 			unavailableNodes.remove(node);
 			unavailableNodeListeners.stream().forEach((unl) -> {
@@ -163,7 +268,11 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 		}
 	}
 
-	private void notifyNodeUnavailable(UaNode node) {
+	/**
+	 * @param node Node whose attribute threw when read.
+	 * @see #notifyNodeAvailable(UaNode)
+	 */
+	protected void notifyNodeUnavailable(UaNode node) {
 		if (!unavailableNodes.contains(node)) {
 			unavailableNodes.add(node);
 			unavailableNodeListeners.stream().forEach((unl) -> {
@@ -172,52 +281,38 @@ public abstract class AbstractTypeNodeFactory implements TypeNodeFactory {
 		}
 	}
 
-	protected UaVariableNode buildNodeWithType(String path, ObjectName on, MBeanAttributeInfo info, NodeId type, boolean registerForPolling) {
-		String name = info.getName();
-
+	/**
+	 * @param nodeId Node id.
+	 * @param name Browse and display name.
+	 * @param type OPC-UA data type.
+	 * @param writable True if clients may write the value.
+	 * @return A new variable node, Bad_WaitingForInitialData until its
+	 * attribute is first read.
+	 */
+	protected UaVariableNode newVariableNode(NodeId nodeId, String name, NodeId type, boolean writable) {
 		UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(getNamespace())
-				.setNodeId(new NodeId(getNamespaceIndex(), path + "/" + name))
+				.setNodeId(nodeId)
 				.setAccessLevel(ubyte(AccessLevel.getMask(
-						info.isWritable() ? AccessLevel.READ_WRITE : AccessLevel.READ_ONLY)))
+						writable ? AccessLevel.READ_WRITE : AccessLevel.READ_ONLY)))
 				.setBrowseName(new QualifiedName(getNamespaceIndex(), name))
 				.setDisplayName(LocalizedText.english(name))
 				.setDataType(type)
 				.setTypeDefinition(Identifiers.BaseDataVariableType)
 				.build();
-		boolean unavailable = false;
-
-		try {
-			setNodeValue(on, info, node);
-			notifyNodeAvailable(node);
-		} catch (RuntimeMBeanException ex) {
-			unavailable = true;
-			node.setDataType(Identifiers.String);
-			node.setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_ONLY)));
-			forceNodeValue(node, "UNAVAILABLE");
-			notifyNodeUnavailable(node);
-		} catch (MBeanException | AttributeNotFoundException | InstanceNotFoundException | ReflectionException | IOException ex) {
-			LOGGER.warn(ex.getMessage(), ex);
-		}
-
-		//TODO if r/w we need to listen for changes on the node.
-		if (!unavailable && info.isWritable()) {
-			final AttributeObserver listener = (UaNode node1, int attributeId, Object value) -> {
-				Attribute attr = new Attribute(info.getName(), ((DataValue) value).getValue().getValue());
-				try {
-					getMBeanServerConnection().setAttribute(on, attr);
-				} catch (InstanceNotFoundException | AttributeNotFoundException | InvalidAttributeValueException | MBeanException | ReflectionException | IOException ex) {
-					LOGGER.warn(ex.getMessage(), ex);
-				}
-			};
-			observers.add(listener);
-			node.addAttributeObserver(listener);
-		}
-
+		node.setValue(new DataValue(new StatusCode(StatusCodes.Bad_WaitingForInitialData)));
 		return node;
 	}
 
-	private void setNodeValue(ObjectName on, MBeanAttributeInfo info, UaVariableNode node) throws InstanceNotFoundException, MBeanException, AttributeNotFoundException, ReflectionException, IOException {
-		setNodeValue(on, info.getName(), node, mBeanServerConnection, false);
+	/**
+	 * Builds the node without reading the attribute, so building an address
+	 * space makes no JMX round trip per attribute. The refresh worker reads
+	 * every new MBean with one getAttributes call, and client reads fetch
+	 * values never read.
+	 */
+	protected UaVariableNode buildNodeWithType(String path, ObjectName on, MBeanAttributeInfo info, NodeId type, boolean registerForPolling) {
+		String name = info.getName();
+		return newVariableNode(new NodeId(getNamespaceIndex(), path + "/" + name),
+				name, type, info.isWritable());
 	}
 
 }
@@ -0,0 +1,167 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import com.digitalpetri.opcua.stack.core.types.builtin.Variant;
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+
+/**
+ * Shows one dimensional array attributes, such as
+ * <code>ThreadMXBean.AllThreadIds</code>, as OPC-UA array variables.
+ *
+ * <p>
+ * Change detection compares the primitive arrays with
+ * {@link java.util.Arrays#equals}. Elements are only boxed into the node's
+ * Variant when the array changed. {@link #readIndexRange} serves a slice of
+ * the stored array, so reading part of a large array does not encode all
+ * of it.
+ * </p>
+ *
+ * @author Justin
+ */
+public class ArrayTypeNodeFactory extends AbstractTypeNodeFactory {
+
+	/**
+	 * OPC-UA one dimensional value rank.
+	 */
+	public static final int ONE_DIMENSION = 1;
+
+	private static final Map<String, NodeId> DATA_TYPES = new HashMap<>();
+
+	static {
+		DATA_TYPES.put(long[].class.getName(), Identifiers.Int64);
+		DATA_TYPES.put(int[].class.getName(), Identifiers.Int32);
+		DATA_TYPES.put(double[].class.getName(), Identifiers.Double);
+		DATA_TYPES.put(String[].class.getName(), Identifiers.String);
+	}
+
+	public static final String[] JMX_TYPES = DATA_TYPES.keySet().toArray(new String[DATA_TYPES.size()]);
+
+	@Override
+	public String[] getSupportedTypes() {
+		return JMX_TYPES;
+	}
+
+	@Override
+	public ValueSlot newValueSlot() {
+		return new ValueSlot(ValueSlot.Kind.ARRAY);
+	}
+
+	@Override
+	public UaVariableNode buildNode(String path, ObjectName on, MBeanAttributeInfo info) {
+		String name = info.getName();
+		UaVariableNode node = newVariableNode(new NodeId(getNamespaceIndex(), path + "/" + name),
+				name, DATA_TYPES.get(info.getType()), false);
+		node.setValueRank(ONE_DIMENSION);
+		return node;
+	}
+
+	@Override
+	public boolean updateValue(UaVariableNode node, ValueSlot slot, Deadband deadband, Object value) {
+		synchronized (slot) {
+			if (!slot.update(value)) {
+				return false;
+			}
+			forceNodeValue(node, box(value));
+			return true;
+		}
+	}
+
+	/**
+	 * @param array Primitive or object array, or null.
+	 * @return The array with its elements boxed, as Variants expect.
+	 */
+	public static Object box(Object array) {
+		if (array == null || !array.getClass().getComponentType().isPrimitive()) {
+			return array;
+		}
+		int length = Array.getLength(array);
+		Object[] boxed;
+		if (array instanceof long[]) {
+			boxed = new Long[length];
+		} else if (array instanceof int[]) {
+			boxed = new Integer[length];
+		} else if (array instanceof double[]) {
+			boxed = new Double[length];
+		} else {
+			boxed = new Object[length];
+		}
+		for (int i = 0; i < length; i++) {
+			boxed[i] = Array.get(array, i);
+		}
+		return boxed;
+	}
+
+	/**
+	 * Reads a slice of an array slot.
+	 *
+	 * @param slot Array slot.
+	 * @param current Node's current value, for its timestamps.
+	 * @param indexRange OPC-UA index range, a single index or
+	 * <code>first:last</code>, both inclusive.
+	 * @return The slice, a Bad status if the range is invalid or selects no
+	 * data, or null for ranges of another form, such as multi-dimensional
+	 * ones, which are left to the SDK.
+	 */
+	public static DataValue readIndexRange(ValueSlot slot, DataValue current, String indexRange) {
+		int first;
+		int last;
+		try {
+			int colon = indexRange.indexOf(':');
+			first = Integer.parseInt(colon < 0 ? indexRange : indexRange.substring(0, colon));
+			last = colon < 0 ? first : Integer.parseInt(indexRange.substring(colon + 1));
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+		if (first < 0 || last < first || (indexRange.indexOf(':') >= 0 && last == first)) {
+			return new DataValue(new StatusCode(StatusCodes.Bad_IndexRangeInvalid));
+		}
+
+		Object slice;
+		synchronized (slot) {
+			Object array = slot.getObject();
+			if (array == null || !array.getClass().isArray()) {
+				return new DataValue(new StatusCode(StatusCodes.Bad_IndexRangeNoData));
+			}
+			int length = Array.getLength(array);
+			if (first >= length) {
+				return new DataValue(new StatusCode(StatusCodes.Bad_IndexRangeNoData));
+			}
+			int end = Math.min(last + 1, length);
+			slice = Array.newInstance(array.getClass().getComponentType(), end - first);
+			System.arraycopy(array, first, slice, 0, end - first);
+		}
+		return new DataValue(new Variant(box(slice)), StatusCode.GOOD,
+				current != null ? current.getSourceTime() : null,
+				current != null ? current.getServerTime() : null);
+	}
+}
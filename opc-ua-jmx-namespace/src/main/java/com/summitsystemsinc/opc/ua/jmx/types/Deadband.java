@@ -0,0 +1,99 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * Minimum change of a numeric value before it is reported.
+ *
+ * <p>
+ * JMX attributes carry no engineering unit range, so a percent deadband is
+ * relative to the last reported value instead of an EURange.
+ * </p>
+ *
+ * @author Justin
+ */
+public final class Deadband {
+
+	public static enum Type {
+		ABSOLUTE,
+		PERCENT
+	}
+
+	private final Type type;
+	private final double value;
+
+	private Deadband(Type type, double value) {
+		if (value < 0 || Double.isNaN(value)) {
+			throw new IllegalArgumentException("Deadband must be a positive number: " + value);
+		}
+		this.type = type;
+		this.value = value;
+	}
+
+	/**
+	 * @param delta Smallest absolute change reported.
+	 * @return The deadband.
+	 */
+	public static Deadband absolute(double delta) {
+		return new Deadband(Type.ABSOLUTE, delta);
+	}
+
+	/**
+	 * @param percent Smallest change reported, in percent of the last
+	 * reported value.
+	 * @return The deadband.
+	 */
+	public static Deadband percent(double percent) {
+		return new Deadband(Type.PERCENT, percent);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * @param last Last reported value.
+	 * @param next New value.
+	 * @return True if the change is large enough to report.
+	 */
+	public boolean isExceeded(double last, double next) {
+		if (Double.isNaN(last) || Double.isNaN(next)) {
+			return Double.isNaN(last) != Double.isNaN(next);
+		}
+		double delta = Math.abs(next - last);
+		switch (type) {
+			case PERCENT:
+				return delta > Math.abs(last) * value / 100d;
+			default:
+				return delta > value;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return type == Type.PERCENT ? value + "%" : "+/-" + value;
+	}
+}
@@ -0,0 +1,311 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import com.digitalpetri.opcua.sdk.core.Reference;
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.enumerated.NodeClass;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Flattens {@link CompositeData} and {@link TabularData} attributes, such as
+ * <code>java.lang:type=Memory/HeapMemoryUsage</code>, into one child variable
+ * node per item.
+ *
+ * <p>
+ * Only the attribute's own node is polled. Its value is fetched once per
+ * cycle and fanned out to the children, nested composites and tables
+ * included. Table rows are named after their index values, and are added
+ * and removed as the table changes. Such late changes are passed to the
+ * {@link ChildNodeListener}s.
+ * </p>
+ *
+ * @author Justin
+ */
+public class OpenDataTypeNodeFactory extends AbstractTypeNodeFactory {
+
+	public static final String[] JMX_TYPES = new String[]{
+		CompositeData.class.getName(),
+		TabularData.class.getName()
+	};
+
+	/**
+	 * OPC-UA data types of the simple open types, anything else is shown as
+	 * a String.
+	 */
+	private static final Map<String, NodeId> SIMPLE_TYPES = new HashMap<>();
+	private static final Map<String, ValueSlot.Kind> SIMPLE_KINDS = new HashMap<>();
+
+	static {
+		simpleType(SimpleType.STRING, Identifiers.String, ValueSlot.Kind.OBJECT);
+		simpleType(SimpleType.BYTE, Identifiers.SByte, ValueSlot.Kind.LONG);
+		simpleType(SimpleType.SHORT, Identifiers.Int16, ValueSlot.Kind.LONG);
+		simpleType(SimpleType.INTEGER, Identifiers.Int32, ValueSlot.Kind.LONG);
+		simpleType(SimpleType.LONG, Identifiers.Int64, ValueSlot.Kind.LONG);
+		simpleType(SimpleType.FLOAT, Identifiers.Float, ValueSlot.Kind.DOUBLE);
+		simpleType(SimpleType.DOUBLE, Identifiers.Double, ValueSlot.Kind.DOUBLE);
+		simpleType(SimpleType.BOOLEAN, Identifiers.Boolean, ValueSlot.Kind.BOOLEAN);
+	}
+
+	private static void simpleType(SimpleType<?> type, NodeId dataType, ValueSlot.Kind kind) {
+		SIMPLE_TYPES.put(type.getClassName(), dataType);
+		SIMPLE_KINDS.put(type.getClassName(), kind);
+	}
+
+	/**
+	 * Children of every composite or tabular attribute node built, by node id.
+	 */
+	private final Map<NodeId, Item> items = new ConcurrentHashMap<>();
+
+	@Override
+	public String[] getSupportedTypes() {
+		return JMX_TYPES;
+	}
+
+	@Override
+	public UaVariableNode buildNode(String path, ObjectName on, MBeanAttributeInfo info) {
+		String name = info.getName();
+		NodeId nodeId = new NodeId(getNamespaceIndex(), path + "/" + name);
+
+		UaVariableNode node = newVariableNode(nodeId, name, Identifiers.BaseDataType, false);
+		//Children of attributes without a declared open type are built from
+		//the first value polled.
+		Item item = newItem(node, getOpenType(info));
+		items.put(nodeId, item);
+		return node;
+	}
+
+	private static OpenType<?> getOpenType(MBeanAttributeInfo info) {
+		Descriptor descriptor = info.getDescriptor();
+		Object type = descriptor != null ? descriptor.getFieldValue("openType") : null;
+		return type instanceof OpenType ? (OpenType<?>) type : null;
+	}
+
+	/**
+	 * Fans the composite or table out to the attribute's child nodes, unless
+	 * it equals the last value.
+	 */
+	@Override
+	public boolean updateValue(UaVariableNode node, ValueSlot slot, Deadband deadband, Object value) {
+		Item item = items.get(node.getNodeId());
+		if (item == null) {
+			return AbstractTypeNodeFactory.updateNodeValue(node, slot, deadband, value, false);
+		}
+		synchronized (item) {
+			if (!slot.update(value)) {
+				return false;
+			}
+			if (item.type == null) {
+				setType(item, value instanceof CompositeData
+						? ((CompositeData) value).getCompositeType()
+						: value instanceof TabularData
+								? ((TabularData) value).getTabularType()
+								: null);
+				notifyChildNodesAdded(node.getNodeId(), childIds(item));
+			}
+			return update(item, value, deadband);
+		}
+	}
+
+	@Override
+	public void nodeRemoved(UaVariableNode node) {
+		Item item = items.remove(node.getNodeId());
+		if (item != null) {
+			synchronized (item) {
+				item.children.values().stream().forEach(this::removeNodes);
+				item.children.clear();
+			}
+		}
+	}
+
+	private Item newItem(UaVariableNode node, OpenType<?> type) {
+		Item item = new Item(node, type);
+		setType(item, type);
+		return item;
+	}
+
+	private void setType(Item item, OpenType<?> type) {
+		item.type = type;
+		if (type instanceof CompositeType) {
+			CompositeType compositeType = (CompositeType) type;
+			for (String key : compositeType.keySet()) {
+				addChild(item, key, compositeType.getType(key));
+			}
+		}
+	}
+
+	private Item addChild(Item parent, String key, OpenType<?> type) {
+		NodeId childId = new NodeId(getNamespaceIndex(),
+				parent.node.getNodeId().getIdentifier() + "/" + key);
+		boolean leaf = !(type instanceof CompositeType || type instanceof TabularType);
+		NodeId dataType = leaf
+				? SIMPLE_TYPES.getOrDefault(type != null ? type.getClassName() : null, Identifiers.String)
+				: Identifiers.BaseDataType;
+		UaVariableNode childNode = newVariableNode(childId, key, dataType, false);
+		Item child = newItem(childNode, type);
+		parent.children.put(key, child);
+
+		getNamespace().addNode(childNode);
+		parent.node.addReference(new Reference(
+				parent.node.getNodeId(),
+				Identifiers.HasComponent,
+				childId.expanded(),
+				NodeClass.Variable,
+				true));
+		return child;
+	}
+
+	private void removeChild(Item parent, String key) {
+		Item child = parent.children.remove(key);
+		if (child != null) {
+			parent.node.removeReference(new Reference(
+					parent.node.getNodeId(),
+					Identifiers.HasComponent,
+					child.node.getNodeId().expanded(),
+					NodeClass.Variable,
+					true));
+			removeNodes(child);
+		}
+	}
+
+	private void removeNodes(Item item) {
+		item.children.values().stream().forEach(this::removeNodes);
+		getNamespace().removeNode(item.node.getNodeId());
+	}
+
+	/**
+	 * @return True if any node changed.
+	 */
+	private boolean update(Item item, Object value, Deadband deadband) {
+		if (item.type instanceof CompositeType) {
+			CompositeData data = value instanceof CompositeData ? (CompositeData) value : null;
+			boolean changed = false;
+			for (Map.Entry<String, Item> e : item.children.entrySet()) {
+				Object part = data != null && data.containsKey(e.getKey()) ? data.get(e.getKey()) : null;
+				changed |= update(e.getValue(), part, deadband);
+			}
+			return changed;
+		} else if (item.type instanceof TabularType) {
+			return updateRows(item, value instanceof TabularData ? (TabularData) value : null, deadband);
+		}
+		Object leafValue = value == null || SIMPLE_TYPES.containsKey(value.getClass().getName())
+				? value
+				: value.toString();
+		return AbstractTypeNodeFactory.updateNodeValue(item.node, item.slot, deadband, leafValue, false);
+	}
+
+	private static List<NodeId> childIds(Item item) {
+		List<NodeId> retVal = new ArrayList<>(item.children.size());
+		item.children.values().stream().forEach((child) -> retVal.add(child.node.getNodeId()));
+		return retVal;
+	}
+
+	private boolean updateRows(Item item, TabularData table, Deadband deadband) {
+		boolean changed = false;
+		List<NodeId> added = new ArrayList<>();
+		List<NodeId> deleted = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		if (table != null) {
+			TabularType type = table.getTabularType();
+			List<String> indexNames = type.getIndexNames();
+			for (Object row : table.values()) {
+				CompositeData rowData = (CompositeData) row;
+				String key = rowName(indexNames, rowData);
+				seen.add(key);
+				Item rowItem = item.children.get(key);
+				if (rowItem == null) {
+					rowItem = addChild(item, key, type.getRowType());
+					added.add(rowItem.node.getNodeId());
+					changed = true;
+				}
+				changed |= update(rowItem, rowData, deadband);
+			}
+		}
+		for (String key : new HashSet<>(item.children.keySet())) {
+			if (!seen.contains(key)) {
+				deleted.add(item.children.get(key).node.getNodeId());
+				removeChild(item, key);
+				changed = true;
+			}
+		}
+		notifyChildNodesDeleted(item.node.getNodeId(), deleted);
+		notifyChildNodesAdded(item.node.getNodeId(), added);
+		return changed;
+	}
+
+	/**
+	 * @return Index values joined with ",". "/" separates node id path
+	 * elements, so it is escaped as "%2F", and "%" as "%25".
+	 */
+	static String rowName(List<String> indexNames, CompositeData row) {
+		StringBuilder name = new StringBuilder();
+		for (String index : indexNames) {
+			if (name.length() > 0) {
+				name.append(',');
+			}
+			name.append(String.valueOf(row.get(index))
+					.replace("%", "%25")
+					.replace("/", "%2F"));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * A composite, table, row or leaf node. Guarded by the attribute's
+	 * top-level item.
+	 */
+	private static final class Item {
+
+		private final UaVariableNode node;
+		/**
+		 * Null until known, for attributes without a declared open type.
+		 */
+		private OpenType<?> type;
+		private final ValueSlot slot;
+		private final Map<String, Item> children = new LinkedHashMap<>();
+
+		private Item(UaVariableNode node, OpenType<?> type) {
+			this.node = node;
+			this.type = type;
+			this.slot = new ValueSlot(SIMPLE_KINDS.getOrDefault(
+					type != null ? type.getClassName() : null, ValueSlot.Kind.OBJECT));
+		}
+	}
+}
@@ -23,7 +23,9 @@ package com.summitsystemsinc.opc.ua.jmx.types;
 import com.digitalpetri.opcua.sdk.server.api.UaNamespace;
 import com.digitalpetri.opcua.sdk.server.model.UaNode;
 import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
 import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UShort;
+import java.util.Collection;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
@@ -48,10 +50,67 @@ public interface TypeNodeFactory {
 
 	void removeUnavailableNodeListener(UnavailableNodeListener l);
 
+	/**
+	 * For factories that add or remove child nodes after the attribute node
+	 * was built.
+	 *
+	 * @param l Listener, held weakly.
+	 */
+	default void addChildNodeListener(ChildNodeListener l) {
+	}
+
+	default void removeChildNodeListener(ChildNodeListener l) {
+	}
+
+	/**
+	 * @return An empty slot for the latest value of an attribute built by
+	 * this factory.
+	 */
+	default ValueSlot newValueSlot() {
+		return new ValueSlot(ValueSlot.Kind.OBJECT);
+	}
+
+	/**
+	 * Applies a value read from JMX to a node built by this factory.
+	 *
+	 * @param node Node built by this factory.
+	 * @param slot Latest value of the node.
+	 * @param deadband Deadband of numeric values, or null for none.
+	 * @param value Value read from JMX.
+	 * @return True if the node was updated.
+	 */
+	default boolean updateValue(UaVariableNode node, ValueSlot slot, Deadband deadband, Object value) {
+		return AbstractTypeNodeFactory.updateNodeValue(node, slot, deadband, value, false);
+	}
+
+	/**
+	 * Called when a node built by this factory is removed from the namespace,
+	 * to release anything kept for it.
+	 *
+	 * @param node Removed node.
+	 */
+	default void nodeRemoved(UaVariableNode node) {
+	}
+
 	public static interface UnavailableNodeListener {
 
 		void nodeUnavailable(UaNode node);
 
 		void nodeAvailable(UaNode node);
 	}
+
+	public static interface ChildNodeListener {
+
+		/**
+		 * @param parent Node the new nodes are components of.
+		 * @param added New nodes, already added to the namespace.
+		 */
+		void childNodesAdded(NodeId parent, Collection<NodeId> added);
+
+		/**
+		 * @param parent Node the removed nodes were components of.
+		 * @param deleted Nodes removed from the namespace.
+		 */
+		void childNodesDeleted(NodeId parent, Collection<NodeId> deleted);
+	}
 }
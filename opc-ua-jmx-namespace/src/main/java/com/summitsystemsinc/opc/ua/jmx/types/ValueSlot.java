@@ -0,0 +1,237 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Latest value of one attribute, kept as primitive bits when the attribute's
+ * type allows it, so unchanged values can be detected without unwrapping the
+ * node's DataValue or calling equals on boxed values.
+ *
+ * <p>
+ * Values that do not match the slot's kind, such as null, are compared with
+ * equals instead.
+ * </p>
+ *
+ * @author Justin
+ */
+public final class ValueSlot {
+
+	public static enum Kind {
+		/**
+		 * byte, short, int and long, stored as a long.
+		 */
+		LONG,
+		/**
+		 * float and double, stored as their long bits.
+		 */
+		DOUBLE,
+		BOOLEAN,
+		/**
+		 * Arrays, compared with {@link Arrays#equals}. A copy is stored so
+		 * arrays changed in place are still detected.
+		 */
+		ARRAY,
+		/**
+		 * Anything else, compared with equals.
+		 */
+		OBJECT
+	}
+
+	private static final byte EMPTY = 0;
+	private static final byte BITS = 1;
+	private static final byte REF = 2;
+
+	private final Kind kind;
+	private byte state = EMPTY;
+	private long bits;
+	private Object ref;
+
+	public ValueSlot(Kind kind) {
+		this.kind = kind;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Stores a value.
+	 *
+	 * @param value Value read from JMX.
+	 * @return True if it differs from the stored value, or nothing was stored
+	 * yet.
+	 */
+	public boolean update(Object value) {
+		return update(value, null);
+	}
+
+	/**
+	 * Stores a value unless it is numeric and within the deadband of the
+	 * stored value.
+	 *
+	 * @param value Value read from JMX.
+	 * @param deadband Deadband of numeric values, or null for none.
+	 * @return True if the value was stored.
+	 */
+	public boolean update(Object value, Deadband deadband) {
+		switch (kind) {
+			case LONG:
+				if (value instanceof Number) {
+					long next = ((Number) value).longValue();
+					if (deadband != null && state == BITS
+							&& !deadband.isExceeded(bits, next)) {
+						return false;
+					}
+					return updateBits(next);
+				}
+				break;
+			case DOUBLE:
+				if (value instanceof Number) {
+					double next = ((Number) value).doubleValue();
+					if (deadband != null && state == BITS
+							&& !deadband.isExceeded(getDouble(), next)) {
+						return false;
+					}
+					return updateBits(Double.doubleToLongBits(next));
+				}
+				break;
+			case BOOLEAN:
+				if (value instanceof Boolean) {
+					return updateBits((Boolean) value ? 1L : 0L);
+				}
+				break;
+			case ARRAY:
+				if (value != null && value.getClass().isArray()) {
+					if (state == REF && arrayEquals(ref, value)) {
+						return false;
+					}
+					ref = copyArray(value);
+					state = REF;
+					return true;
+				}
+				break;
+			default:
+				break;
+		}
+		return updateRef(value);
+	}
+
+	private boolean updateBits(long newBits) {
+		if (state == BITS && bits == newBits) {
+			return false;
+		}
+		bits = newBits;
+		ref = null;
+		state = BITS;
+		return true;
+	}
+
+	private boolean updateRef(Object value) {
+		if (state == REF && Objects.equals(ref, value)) {
+			return false;
+		}
+		ref = value;
+		state = REF;
+		return true;
+	}
+
+	private static boolean arrayEquals(Object a, Object b) {
+		if (a instanceof long[] && b instanceof long[]) {
+			return Arrays.equals((long[]) a, (long[]) b);
+		} else if (a instanceof int[] && b instanceof int[]) {
+			return Arrays.equals((int[]) a, (int[]) b);
+		} else if (a instanceof double[] && b instanceof double[]) {
+			return Arrays.equals((double[]) a, (double[]) b);
+		} else if (a instanceof float[] && b instanceof float[]) {
+			return Arrays.equals((float[]) a, (float[]) b);
+		} else if (a instanceof short[] && b instanceof short[]) {
+			return Arrays.equals((short[]) a, (short[]) b);
+		} else if (a instanceof byte[] && b instanceof byte[]) {
+			return Arrays.equals((byte[]) a, (byte[]) b);
+		} else if (a instanceof boolean[] && b instanceof boolean[]) {
+			return Arrays.equals((boolean[]) a, (boolean[]) b);
+		} else if (a instanceof Object[] && b instanceof Object[]) {
+			return a.getClass() == b.getClass() && Arrays.equals((Object[]) a, (Object[]) b);
+		}
+		return false;
+	}
+
+	private static Object copyArray(Object array) {
+		if (array instanceof long[]) {
+			return ((long[]) array).clone();
+		} else if (array instanceof int[]) {
+			return ((int[]) array).clone();
+		} else if (array instanceof double[]) {
+			return ((double[]) array).clone();
+		} else if (array instanceof float[]) {
+			return ((float[]) array).clone();
+		} else if (array instanceof short[]) {
+			return ((short[]) array).clone();
+		} else if (array instanceof byte[]) {
+			return ((byte[]) array).clone();
+		} else if (array instanceof boolean[]) {
+			return ((boolean[]) array).clone();
+		}
+		return ((Object[]) array).clone();
+	}
+
+	/**
+	 * @return The stored value if it is not held as primitive bits, such as
+	 * the copy of an array.
+	 */
+	public Object getObject() {
+		return ref;
+	}
+
+	/**
+	 * @return The stored value of a LONG or BOOLEAN slot, or the raw bits of
+	 * a DOUBLE slot.
+	 */
+	public long getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return The stored value of a DOUBLE slot.
+	 */
+	public double getDouble() {
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * @return True if the stored value is held as primitive bits.
+	 */
+	public boolean isPrimitive() {
+		return state == BITS;
+	}
+
+	/**
+	 * Empties the slot, the next update always reports a change.
+	 */
+	public void clear() {
+		state = EMPTY;
+		ref = null;
+	}
+}
@@ -0,0 +1,153 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.api.UaNamespace;
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import static com.digitalpetri.opcua.stack.core.types.builtin.unsigned.Unsigned.ushort;
+import java.lang.reflect.Proxy;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Feeds timed samples and checks the derived nodes after each one.
+ *
+ * @author Justin Smith
+ */
+public class DerivedValuesTest {
+
+	private static final double DELTA = 1e-9;
+
+	private static DerivedValues derived(long windowMs) {
+		UaNamespace namespace = (UaNamespace) Proxy.newProxyInstance(
+				DerivedValuesTest.class.getClassLoader(),
+				new Class<?>[]{UaNamespace.class},
+				(proxy, method, args) -> "getNamespaceIndex".equals(method.getName()) ? ushort(2) : null);
+		UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(null)
+				.setNodeId(new NodeId(2, "test:type=Counter/Count"))
+				.setBrowseName(new QualifiedName(2, "Count"))
+				.setDisplayName(LocalizedText.english("Count"))
+				.setDataType(Identifiers.Int64)
+				.setTypeDefinition(Identifiers.BaseDataVariableType)
+				.build();
+		return new DerivedValues(namespace, node, windowMs);
+	}
+
+	private static double value(DerivedValues derived, int node) {
+		return (Double) derived.getNodes().get(node).getValue().getValue().getValue();
+	}
+
+	private static double rate(DerivedValues derived) {
+		return value(derived, 0);
+	}
+
+	private static double min(DerivedValues derived) {
+		return value(derived, 1);
+	}
+
+	private static double max(DerivedValues derived) {
+		return value(derived, 2);
+	}
+
+	private static double avg(DerivedValues derived) {
+		return value(derived, 3);
+	}
+
+	@Test
+	public void testRate() {
+		DerivedValues derived = derived(10_000);
+		derived.sample(0, 100L);
+		assertFalse("No rate from a single sample.",
+				derived.getNodes().get(0).getValue().getStatusCode().isGood());
+
+		derived.sample(500, 150L);
+		assertEquals(100, rate(derived), DELTA);
+		derived.sample(2500, 150L);
+		assertEquals(0, rate(derived), DELTA);
+
+		derived.sample(2500, 400L);
+		assertEquals("No rate between samples of the same time.", 0, rate(derived), DELTA);
+	}
+
+	@Test
+	public void testCounterRestart() {
+		DerivedValues derived = derived(10_000);
+		derived.sample(0, 1000L);
+		derived.sample(1000, 1500L);
+		assertEquals(500, rate(derived), DELTA);
+
+		derived.sample(2000, 200L);
+		assertEquals("Restarted from zero.", 200, rate(derived), DELTA);
+		derived.sample(3000, 300L);
+		assertEquals(100, rate(derived), DELTA);
+	}
+
+	@Test
+	public void testWindow() {
+		DerivedValues derived = derived(1000);
+		derived.sample(0, 5);
+		derived.sample(100, 3);
+		derived.sample(200, 8);
+		derived.sample(300, 4);
+		assertEquals(3, min(derived), DELTA);
+		assertEquals(8, max(derived), DELTA);
+		assertEquals(5, avg(derived), DELTA);
+
+		//Samples at or before 100 leave the window, along with the minimum.
+		derived.sample(1100, 6);
+		assertEquals(4, min(derived), DELTA);
+		assertEquals(8, max(derived), DELTA);
+		assertEquals(6, avg(derived), DELTA);
+
+		//Now the maximum leaves.
+		derived.sample(1250, 1);
+		assertEquals(1, min(derived), DELTA);
+		assertEquals(6, max(derived), DELTA);
+		assertEquals(11 / 3d, avg(derived), DELTA);
+	}
+
+	@Test
+	public void testSingleSampleResetsWindow() {
+		DerivedValues derived = derived(1000);
+		for (int t = 0; t < 100; t++) {
+			derived.sample(t, 0.1 * t);
+		}
+		derived.sample(5000, 7);
+		assertEquals(7, min(derived), 0);
+		assertEquals(7, max(derived), 0);
+		assertEquals("Running sum starts over.", 7, avg(derived), 0);
+	}
+
+	@Test
+	public void testIgnoredSamples() {
+		DerivedValues derived = derived(1000);
+		derived.sample(0, 2);
+		derived.sample(100, "text");
+		derived.sample(200, Double.NaN);
+		derived.sample(300, 4);
+		assertEquals(3, avg(derived), DELTA);
+		assertEquals(2 * 1000 / 300d, rate(derived), DELTA);
+	}
+}
@@ -0,0 +1,89 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class HistoryBufferTest {
+
+	private static List<Long> times(HistoryBuffer buffer, long startMs, long endMs) {
+		List<Long> retVal = new ArrayList<>();
+		buffer.read(startMs, endMs, 0, (timeMs, value) -> retVal.add(timeMs));
+		return retVal;
+	}
+
+	@Test
+	public void testOldestSamplesOverwritten() {
+		HistoryBuffer buffer = new HistoryBuffer("long", 40);
+		for (long t = 0; t < 100; t++) {
+			buffer.add(t, t);
+		}
+		assertEquals(40, buffer.size());
+		List<Long> times = times(buffer, 0, Long.MAX_VALUE);
+		assertEquals(60L, (long) times.get(0));
+		assertEquals(99L, (long) times.get(39));
+
+		assertEquals("Start inclusive, end exclusive.", 10, times(buffer, 70, 80).size());
+		assertEquals(5, buffer.read(0, Long.MAX_VALUE, 5, (timeMs, value) -> {
+		}));
+	}
+
+	@Test
+	public void testLongValuesKeptExactly() {
+		HistoryBuffer buffer = new HistoryBuffer("long", 10);
+		long big = (1L << 53) + 1;
+		buffer.add(0, big);
+		buffer.add(1, Long.MAX_VALUE);
+		List<Number> values = new ArrayList<>();
+		buffer.read(0, Long.MAX_VALUE, 0, (timeMs, value) -> values.add(value));
+		assertEquals(big, values.get(0));
+		assertEquals(Long.MAX_VALUE, values.get(1));
+
+		HistoryBuffer doubles = new HistoryBuffer("double", 10);
+		doubles.add(0, 0.1);
+		doubles.read(0, Long.MAX_VALUE, 0, (timeMs, value) -> assertEquals(0.1, value));
+	}
+
+	@Test
+	public void testAggregatePerInterval() {
+		HistoryBuffer buffer = new HistoryBuffer("double", 100);
+		buffer.add(0, 1);
+		buffer.add(5, 3);
+		buffer.add(20, 10);
+		double[] min = new double[3];
+		double[] max = new double[3];
+		double[] avg = new double[3];
+		buffer.aggregate(0, 10, min, max, avg);
+
+		assertEquals(1, min[0], 0);
+		assertEquals(3, max[0], 0);
+		assertEquals(2, avg[0], 0);
+		assertTrue("Empty interval.", Double.isNaN(avg[1]));
+		assertEquals(10, avg[2], 0);
+	}
+}
@@ -0,0 +1,96 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.types.builtin.DataValue;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.management.ObjectName;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class HistoryStoreTest {
+
+	private HistoryStore store;
+	private JmxPolledAttribute jpa;
+	private NodeId nodeId;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new HistoryStore(Collections.singletonMap(AttributePattern.of("test:*", null), 100));
+		nodeId = new NodeId(2, "test/Counter/Count");
+		UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(null)
+				.setNodeId(nodeId)
+				.setBrowseName(new QualifiedName(2, "Count"))
+				.setDisplayName(LocalizedText.english("Count"))
+				.setDataType(Identifiers.Int64)
+				.setTypeDefinition(Identifiers.BaseDataVariableType)
+				.build();
+		jpa = new JmxPolledAttribute(new ObjectName("test:type=Counter"), "Count", node);
+		assertTrue(store.register(jpa, "long"));
+		for (long t = 10; t <= 40; t += 10) {
+			store.record(jpa, t, t * 100);
+		}
+	}
+
+	private static List<Long> times(List<DataValue> values) {
+		List<Long> retVal = new ArrayList<>();
+		values.stream().forEach((dv) -> retVal.add(dv.getSourceTime().getJavaTime()));
+		return retVal;
+	}
+
+	@Test
+	public void testForwardReadStartInclusiveEndExclusive() throws Exception {
+		List<DataValue> values = store.readRaw(nodeId, 20, 40, 0);
+		assertEquals(Arrays.asList(20L, 30L), times(values));
+		assertEquals(2000L, values.get(0).getValue().getValue());
+		assertEquals(Arrays.asList(20L), times(store.readRaw(nodeId, 20, 40, 1)));
+	}
+
+	@Test
+	public void testLongValuesReadBackExactly() throws Exception {
+		long big = (1L << 53) + 1;
+		store.record(jpa, 50, big);
+		assertEquals(big, store.readRaw(nodeId, 50, 60, 0).get(0).getValue().getValue());
+	}
+
+	@Test
+	public void testReverseReadStartInclusiveEndExclusive() throws Exception {
+		List<DataValue> values = store.readRaw(nodeId, 30, 10, 0);
+		assertEquals("Newest first, from the start time down to the end time.",
+				Arrays.asList(30L, 20L), times(values));
+		assertEquals(3000L, values.get(0).getValue().getValue());
+		assertEquals(Arrays.asList(30L), times(store.readRaw(nodeId, 30, 10, 1)));
+		assertEquals(Arrays.asList(40L, 30L, 20L, 10L), times(store.readRaw(nodeId, Long.MAX_VALUE, 0, 0)));
+	}
+}
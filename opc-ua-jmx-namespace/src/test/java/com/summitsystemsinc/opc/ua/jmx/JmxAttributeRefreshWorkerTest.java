@@ -0,0 +1,154 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Refresh cycles over a connection whose reads of one MBean throw a
+ * RuntimeException.
+ *
+ * @author Justin Smith
+ */
+public class JmxAttributeRefreshWorkerTest {
+
+	private static final String BROKEN = "test:type=Broken";
+	private static final String TARGET = "test:type=Target";
+	private static final int REFRESH_MS = 10;
+	private static final long TIMEOUT_S = 10;
+
+	private final Target target = new Target();
+	private MBeanServerConnection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+		mBeanServer.registerMBean(new Target(), new ObjectName(BROKEN));
+		mBeanServer.registerMBean(target, new ObjectName(TARGET));
+		ObjectName broken = new ObjectName(BROKEN);
+		connection = (MBeanServerConnection) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[]{MBeanServerConnection.class},
+				(proxy, method, args) -> {
+					if (args != null && broken.equals(args[0])) {
+						throw new IllegalStateException("Broken MBean");
+					}
+					try {
+						return method.invoke(mBeanServer, args);
+					} catch (InvocationTargetException ex) {
+						throw ex.getCause();
+					}
+				});
+	}
+
+	private static JmxPolledAttribute attribute(String on, String name) throws Exception {
+		UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(null)
+				.setNodeId(new NodeId(2, on + "/" + name))
+				.setBrowseName(new QualifiedName(2, name))
+				.setDisplayName(LocalizedText.english(name))
+				.setDataType(Identifiers.Int32)
+				.setTypeDefinition(Identifiers.BaseDataVariableType)
+				.build();
+		return new JmxPolledAttribute(new ObjectName(on), name, node);
+	}
+
+	/**
+	 * Runs the worker on its own refresh thread and waits for the healthy
+	 * MBean to be read in several cycles.
+	 */
+	private void assertCyclesContinue(JmxAttributeRefreshWorker worker) throws Exception {
+		worker.addPolledAttribute(attribute(BROKEN, "A"));
+		worker.addPolledAttribute(attribute(TARGET, "A"));
+		worker.start();
+		try {
+			assertTrue("Polling stopped after the first failing read.",
+					target.reads.await(TIMEOUT_S, TimeUnit.SECONDS));
+		} finally {
+			worker.stop();
+		}
+	}
+
+	@Test
+	public void testThrowingMBeanSkippedOnSinglePartition() throws Exception {
+		assertCyclesContinue(new JmxAttributeRefreshWorker(REFRESH_MS, connection));
+	}
+
+	@Test
+	public void testThrowingMBeanSkippedOnPartitions() throws Exception {
+		assertCyclesContinue(new JmxAttributeRefreshWorker(REFRESH_MS, connection, 2, false));
+	}
+
+	@Test
+	public void testReadCostKeptUntilLastAttributeRemoved() throws Exception {
+		JmxAttributeRefreshWorker worker = new JmxAttributeRefreshWorker(REFRESH_MS, connection);
+		JmxPolledAttribute a = attribute(TARGET, "A");
+		JmxPolledAttribute b = attribute(TARGET, "B");
+		worker.addPolledAttribute(a);
+		worker.addPolledAttribute(b);
+		assertEquals(2, worker.refreshDue(System.currentTimeMillis()));
+		assertEquals(1, worker.getTopObjectNames().length);
+
+		worker.removePolledAttribute(a);
+		assertEquals("B is still polled.", 1, worker.getTopObjectNames().length);
+		assertTrue(worker.getTopObjectNames()[0].startsWith(TARGET));
+
+		worker.removePolledAttribute(b);
+		assertEquals(0, worker.getTopObjectNames().length);
+	}
+
+	public static interface TargetMBean {
+
+		int getA();
+
+		int getB();
+	}
+
+	public static class Target implements TargetMBean {
+
+		private final CountDownLatch reads = new CountDownLatch(3);
+
+		@Override
+		public int getA() {
+			reads.countDown();
+			return (int) reads.getCount();
+		}
+
+		@Override
+		public int getB() {
+			return 0;
+		}
+	}
+}
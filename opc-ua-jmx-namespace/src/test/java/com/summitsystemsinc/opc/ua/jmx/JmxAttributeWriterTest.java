@@ -0,0 +1,219 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.model.UaVariableNode;
+import com.digitalpetri.opcua.stack.core.Identifiers;
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.QualifiedName;
+import com.digitalpetri.opcua.stack.core.types.builtin.StatusCode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes queue up behind a write blocked in the gate MBean, so coalescing,
+ * batching and the queue bound can be observed.
+ *
+ * @author Justin Smith
+ */
+public class JmxAttributeWriterTest {
+
+	private static final long TIMEOUT_S = 10;
+
+	private MBeanServer mBeanServer;
+	private Target gate;
+	private Target target;
+	private JmxAttributeWriter writer;
+
+	@Before
+	public void setUp() throws Exception {
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		gate = new Target(true);
+		target = new Target(false);
+		mBeanServer.registerMBean(gate, new ObjectName("test:type=Gate"));
+		mBeanServer.registerMBean(target, new ObjectName("test:type=Target"));
+	}
+
+	@After
+	public void tearDown() {
+		gate.release.countDown();
+		if (writer != null) {
+			writer.shutdown();
+		}
+	}
+
+	private static JmxPolledAttribute attribute(String on, String name) throws Exception {
+		UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(null)
+				.setNodeId(new NodeId(2, on + "/" + name))
+				.setBrowseName(new QualifiedName(2, name))
+				.setDisplayName(LocalizedText.english(name))
+				.setDataType(Identifiers.Int32)
+				.setTypeDefinition(Identifiers.BaseDataVariableType)
+				.build();
+		return new JmxPolledAttribute(new ObjectName(on), name, node);
+	}
+
+	/**
+	 * Occupies the write thread until the gate is released.
+	 */
+	private CompletableFuture<StatusCode> block() throws Exception {
+		CompletableFuture<StatusCode> retVal = writer.write(attribute("test:type=Gate", "A"), 1);
+		assertTrue(gate.entered.await(TIMEOUT_S, TimeUnit.SECONDS));
+		return retVal;
+	}
+
+	private static StatusCode get(CompletableFuture<StatusCode> f) throws Exception {
+		return f.get(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testWritesToOneAttributeCoalesced() throws Exception {
+		writer = new JmxAttributeWriter(mBeanServer);
+		block();
+		JmxPolledAttribute a = attribute("test:type=Target", "A");
+		CompletableFuture<StatusCode> first = writer.write(a, 1);
+		CompletableFuture<StatusCode> second = writer.write(a, 2);
+		assertEquals(1, writer.getQueueDepth());
+		gate.release.countDown();
+
+		assertTrue(get(first).isGood());
+		assertTrue(get(second).isGood());
+		assertEquals("Only the latest value is written.", 2, target.a);
+		assertEquals(1, target.writes);
+		assertEquals(1, writer.getCoalescedWrites());
+	}
+
+	@Test
+	public void testWaitingWritesBatched() throws Exception {
+		writer = new JmxAttributeWriter(mBeanServer);
+		CompletableFuture<StatusCode> blocked = block();
+		CompletableFuture<StatusCode> a = writer.write(attribute("test:type=Target", "A"), 1);
+		CompletableFuture<StatusCode> b = writer.write(attribute("test:type=Target", "B"), 2);
+		gate.release.countDown();
+
+		assertTrue(get(blocked).isGood());
+		assertTrue(get(a).isGood());
+		assertTrue(get(b).isGood());
+		assertEquals(1, target.a);
+		assertEquals(2, target.b);
+		assertEquals("One call for the gate, one for both target attributes.",
+				2, writer.getSetAttributesCalls());
+	}
+
+	@Test
+	public void testFullQueueRejected() throws Exception {
+		writer = new JmxAttributeWriter(mBeanServer, 2);
+		block();
+		JmxPolledAttribute a = attribute("test:type=Target", "A");
+		CompletableFuture<StatusCode> accepted = writer.write(a, 1);
+		writer.write(attribute("test:type=Target", "B"), 2);
+
+		CompletableFuture<StatusCode> rejected = writer.write(attribute("test:type=Gate", "B"), 3);
+		assertTrue(rejected.isDone());
+		assertEquals(StatusCodes.Bad_TooManyOperations, get(rejected).getValue());
+		CompletableFuture<StatusCode> coalesced = writer.write(a, 4);
+		assertFalse("Writes to a waiting attribute take no room.", coalesced.isDone());
+		assertEquals(1, writer.getFailedWrites());
+
+		gate.release.countDown();
+		assertTrue(get(accepted).isGood());
+		assertTrue(get(coalesced).isGood());
+		assertEquals(4, target.a);
+	}
+
+	@Test
+	public void testShutdownCompletesWaitingWrites() throws Exception {
+		writer = new JmxAttributeWriter(mBeanServer);
+		block();
+		CompletableFuture<StatusCode> waiting = writer.write(attribute("test:type=Target", "A"), 1);
+		writer.shutdown();
+
+		assertEquals(StatusCodes.Bad_Shutdown, get(waiting).getValue());
+		CompletableFuture<StatusCode> late = writer.write(attribute("test:type=Target", "A"), 2);
+		assertEquals(StatusCodes.Bad_Shutdown, get(late).getValue());
+		assertEquals(0, target.writes);
+	}
+
+	public static interface TargetMBean {
+
+		int getA();
+
+		void setA(int a);
+
+		int getB();
+
+		void setB(int b);
+	}
+
+	public static class Target implements TargetMBean {
+
+		private final boolean blocking;
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile int a;
+		private volatile int b;
+		private volatile int writes;
+
+		public Target(boolean blocking) {
+			this.blocking = blocking;
+		}
+
+		@Override
+		public int getA() {
+			return a;
+		}
+
+		@Override
+		public void setA(int a) {
+			if (blocking) {
+				entered.countDown();
+				try {
+					release.await(TIMEOUT_S, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			this.a = a;
+			writes++;
+		}
+
+		@Override
+		public int getB() {
+			return b;
+		}
+
+		@Override
+		public void setB(int b) {
+			this.b = b;
+			writes++;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.stack.core.StatusCodes;
+import com.digitalpetri.opcua.stack.core.UaException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Operations are held in {@link Slow#hold()} until released, which ignores
+ * interrupts like a remote invoke would.
+ *
+ * @author Justin Smith
+ */
+public class JmxOperationInvokerTest {
+
+	private static final long TIMEOUT_S = 10;
+	private static final String[] NO_SIGNATURE = new String[0];
+	private static final String[] INT_SIGNATURE = new String[]{"int"};
+
+	private MBeanServer mBeanServer;
+	private ObjectName limited;
+	private ObjectName other;
+	private Slow limitedBean;
+	private Slow otherBean;
+	private JmxOperationInvoker invoker;
+
+	@Before
+	public void setUp() throws Exception {
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		limited = new ObjectName("test:type=Slow");
+		other = new ObjectName("test:type=Other");
+		limitedBean = new Slow();
+		otherBean = new Slow();
+		mBeanServer.registerMBean(limitedBean, limited);
+		mBeanServer.registerMBean(otherBean, other);
+	}
+
+	@After
+	public void tearDown() {
+		limitedBean.release.countDown();
+		otherBean.release.countDown();
+		if (invoker != null) {
+			invoker.shutdown();
+		}
+	}
+
+	private static Map<AttributePattern, Integer> limit(String pattern, int limit) {
+		return Collections.singletonMap(AttributePattern.of(pattern, null), limit);
+	}
+
+	private CompletableFuture<Object> hold(ObjectName on) {
+		return invoker.invoke(on, "hold", new Object[0], NO_SIGNATURE);
+	}
+
+	private CompletableFuture<Object> echo(ObjectName on, int value) {
+		return invoker.invoke(on, "echo", new Object[]{value}, INT_SIGNATURE);
+	}
+
+	private static long status(CompletableFuture<Object> f) throws Exception {
+		try {
+			f.get(TIMEOUT_S, TimeUnit.SECONDS);
+		} catch (ExecutionException ex) {
+			return ((UaException) ex.getCause()).getStatusCode().getValue();
+		}
+		throw new AssertionError("Operation succeeded.");
+	}
+
+	@Test
+	public void testTimedOutOperationKeepsPermitUntilItReturns() throws Exception {
+		//Long enough for an idle thread to start the call before it times out.
+		invoker = new JmxOperationInvoker(mBeanServer, 2, 4, 1000, limit("test:type=Slow", 1));
+		CompletableFuture<Object> held = hold(limited);
+		assertTrue(limitedBean.entered.await(TIMEOUT_S, TimeUnit.SECONDS));
+		assertEquals(StatusCodes.Bad_Timeout, status(held));
+		assertTrue("Still running after its caller was answered.", limitedBean.returned.getCount() > 0);
+
+		assertEquals(StatusCodes.Bad_TooManyOperations, status(echo(limited, 1)));
+
+		limitedBean.release.countDown();
+		assertTrue(limitedBean.returned.await(TIMEOUT_S, TimeUnit.SECONDS));
+		long deadline = System.currentTimeMillis() + TIMEOUT_S * 1000;
+		CompletableFuture<Object> echo = echo(limited, 2);
+		while (echo.isCompletedExceptionally() && System.currentTimeMillis() < deadline) {
+			//The permit is released just after hold returns.
+			Thread.sleep(10);
+			echo = echo(limited, 2);
+		}
+		assertEquals(2, echo.get(TIMEOUT_S, TimeUnit.SECONDS));
+		assertEquals(1, invoker.getTimedOutInvocations());
+	}
+
+	@Test
+	public void testOperationTimedOutWhileQueuedNeverRuns() throws Exception {
+		invoker = new JmxOperationInvoker(mBeanServer, 1, 4, 200, limit("test:type=Slow", 1));
+		invoker.invoke(other, "hold", new Object[0], NO_SIGNATURE);
+		assertTrue(otherBean.entered.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+		assertEquals(StatusCodes.Bad_Timeout, status(echo(limited, 1)));
+		CompletableFuture<Object> queued = echo(limited, 2);
+		assertFalse("Permit of the queued call is free again.", queued.isDone());
+
+		otherBean.release.countDown();
+		assertEquals(2, queued.get(TIMEOUT_S, TimeUnit.SECONDS));
+		assertEquals(1, limitedBean.echoes.get());
+	}
+
+	@Test
+	public void testFullQueueRejected() throws Exception {
+		invoker = new JmxOperationInvoker(mBeanServer, 1, 1, 0,
+				Collections.<AttributePattern, Integer>emptyMap());
+		CompletableFuture<Object> held = hold(other);
+		assertTrue(otherBean.entered.await(TIMEOUT_S, TimeUnit.SECONDS));
+		CompletableFuture<Object> queued = echo(other, 1);
+
+		CompletableFuture<Object> rejected = echo(other, 2);
+		assertTrue(rejected.isDone());
+		assertEquals(StatusCodes.Bad_TooManyOperations, status(rejected));
+		assertEquals(1, invoker.getRejectedInvocations());
+
+		otherBean.release.countDown();
+		held.get(TIMEOUT_S, TimeUnit.SECONDS);
+		assertEquals(1, queued.get(TIMEOUT_S, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testLimitAppliesPerObjectName() throws Exception {
+		invoker = new JmxOperationInvoker(mBeanServer, 2, 4, 0, limit("test:*", 1));
+		CompletableFuture<Object> held = hold(limited);
+		assertTrue(limitedBean.entered.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+		assertEquals(StatusCodes.Bad_TooManyOperations, status(echo(limited, 1)));
+		assertEquals("Other MBeans have their own permits.",
+				3, echo(other, 3).get(TIMEOUT_S, TimeUnit.SECONDS));
+
+		limitedBean.release.countDown();
+		held.get(TIMEOUT_S, TimeUnit.SECONDS);
+		assertEquals(4, echo(limited, 4).get(TIMEOUT_S, TimeUnit.SECONDS));
+	}
+
+	public static interface SlowMBean {
+
+		void hold();
+
+		int echo(int value);
+	}
+
+	public static class Slow implements SlowMBean {
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final CountDownLatch returned = new CountDownLatch(1);
+		private final AtomicInteger echoes = new AtomicInteger();
+
+		@Override
+		public void hold() {
+			entered.countDown();
+			boolean interrupted = false;
+			while (true) {
+				try {
+					if (release.await(TIMEOUT_S, TimeUnit.SECONDS)) {
+						break;
+					}
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			returned.countDown();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public int echo(int value) {
+			echoes.incrementAndGet();
+			return value;
+		}
+	}
+}
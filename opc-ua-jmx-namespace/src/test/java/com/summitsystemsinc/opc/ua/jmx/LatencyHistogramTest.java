@@ -0,0 +1,60 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketsAreContiguous() {
+		int previous = 0;
+		for (long v = 1; v < 1 << 16; v++) {
+			int bucket = LatencyHistogram.bucketOf(v);
+			assertTrue("Value " + v + " skipped a bucket.", bucket - previous <= 1);
+			assertTrue(v <= LatencyHistogram.highestValueOf(bucket));
+			previous = bucket;
+		}
+	}
+
+	@Test
+	public void testPercentilesWithinAnEighth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500, histogram.getPercentile(50), 500 / 8);
+		assertEquals(990, histogram.getPercentile(99), 990 / 8);
+		assertEquals(1000, histogram.getPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+}
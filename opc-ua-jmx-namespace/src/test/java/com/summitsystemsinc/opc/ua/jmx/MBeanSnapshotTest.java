@@ -0,0 +1,238 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.OpcUaServer;
+import com.digitalpetri.opcua.sdk.server.api.config.OpcUaServerConfig;
+import com.digitalpetri.opcua.sdk.server.identity.UsernameIdentityValidator;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateManager;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateValidator;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.digitalpetri.opcua.stack.core.types.builtin.NodeId;
+import com.digitalpetri.opcua.stack.core.types.builtin.unsigned.UShort;
+import com.summitsystemsinc.opc.ua.jmx.types.DefaultTypes;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class MBeanSnapshotTest {
+
+	private static final String NAMESPACE_URI = "urn:summitsystemsinc:opcua:jmx:test:snapshot";
+	private static final long TIMEOUT_MS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MBeanServer mBeanServer;
+	private MBeanSnapshot snapshot;
+	private JmxNamespace namespace;
+
+	@Before
+	public void setUp() throws Exception {
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		snapshot = new MBeanSnapshot(folder.getRoot().toPath().resolve("mbeans.snapshot"));
+	}
+
+	@After
+	public void tearDown() {
+		if (namespace != null) {
+			namespace.shutdown();
+		}
+	}
+
+	private static ObjectName name(String type) throws Exception {
+		return new ObjectName("test:type=" + type);
+	}
+
+	private MBeanInfo register(String type, Object bean) throws Exception {
+		mBeanServer.registerMBean(bean, name(type));
+		return mBeanServer.getMBeanInfo(name(type));
+	}
+
+	private void buildNamespace() {
+		OpcUaServer server = new OpcUaServer(OpcUaServerConfig.builder()
+				.setApplicationName(LocalizedText.english("summit opc-ua test-server"))
+				.setApplicationUri("urn:summit:opcua:testServer")
+				.setCertificateManager(new DefaultCertificateManager())
+				.setCertificateValidator(new DefaultCertificateValidator(new File("./security")))
+				.setIdentityValidator(new UsernameIdentityValidator(true, (challenge) -> false))
+				.setProductUri("urn:summit:opcua:sdk")
+				.setServerName("")
+				.build());
+		UShort namespaceIndex = server.getNamespaceManager().registerUri(NAMESPACE_URI);
+		namespace = new JmxNamespace(server, namespaceIndex, NAMESPACE_URI, mBeanServer,
+				DefaultTypes.newTypeFactories(),
+				JmxNamespaceConfig.builder()
+						.include("test:*", "*")
+						.setTrackRegistrations(false)
+						.setSnapshotFile(snapshot.getFile())
+						.build());
+	}
+
+	private boolean hasNode(String type, String attribute) {
+		return namespace.getNode(new NodeId(namespace.getNamespaceIndex(),
+				"test/" + type + "/" + attribute)).isPresent();
+	}
+
+	/**
+	 * Waits for the background reconcile to write the snapshot of the live
+	 * MBeans.
+	 *
+	 * @param on MBean only live MBeans have.
+	 */
+	private Map<ObjectName, MBeanInfo> awaitSnapshot(ObjectName on) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (System.currentTimeMillis() < deadline) {
+			Map<ObjectName, MBeanInfo> retVal = snapshot.read();
+			if (retVal.containsKey(on)) {
+				return retVal;
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("Snapshot was not rewritten.");
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Map<ObjectName, MBeanInfo> written = new LinkedHashMap<>();
+		written.put(name("B"), register("B", new B()));
+		written.put(name("A"), register("A", new A()));
+		written.put(name("Op"), new MBeanInfo("test.Op", null, null, null,
+				new MBeanOperationInfo[]{new MBeanOperationInfo("add", null,
+							new MBeanParameterInfo[]{
+								new MBeanParameterInfo("x", "int", null),
+								new MBeanParameterInfo("y", "java.lang.String", null)},
+							"long", MBeanOperationInfo.ACTION)}, null));
+		snapshot.write(written);
+
+		Map<ObjectName, MBeanInfo> read = snapshot.read();
+		assertEquals("Order is kept.", new ArrayList<>(written.keySet()), new ArrayList<>(read.keySet()));
+		written.forEach((on, info) -> {
+			assertTrue(on.toString(), MBeanSnapshot.isEquivalent(info, read.get(on)));
+		});
+		assertFalse(MBeanSnapshot.isEquivalent(read.get(name("A")), read.get(name("B"))));
+		MBeanParameterInfo[] signature = read.get(name("Op")).getOperations()[0].getSignature();
+		assertEquals("java.lang.String", signature[1].getType());
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedSnapshotRejected() throws Exception {
+		Map<ObjectName, MBeanInfo> written = new LinkedHashMap<>();
+		written.put(name("A"), register("A", new A()));
+		snapshot.write(written);
+		byte[] bytes = Files.readAllBytes(snapshot.getFile());
+		Files.write(snapshot.getFile(), java.util.Arrays.copyOf(bytes, bytes.length - 3));
+		snapshot.read();
+	}
+
+	@Test(expected = IOException.class)
+	public void testVersionOneRejected() throws Exception {
+		Path file = snapshot.getFile();
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			out.writeInt(0x4A4D5855);
+			out.writeInt(1);
+			out.writeByte(0);
+		}
+		snapshot.read();
+	}
+
+	@Test
+	public void testUnreadableSnapshotFallsBackToDiscovery() throws Exception {
+		register("A", new A());
+		Files.write(snapshot.getFile(), new byte[]{1, 2, 3});
+
+		buildNamespace();
+		assertTrue(hasNode("A", "A"));
+		assertTrue("Snapshot is replaced.", MBeanSnapshot.isEquivalent(
+				mBeanServer.getMBeanInfo(name("A")), snapshot.read().get(name("A"))));
+	}
+
+	@Test
+	public void testReconcileAddsRemovesAndChanges() throws Exception {
+		Map<ObjectName, MBeanInfo> cached = new LinkedHashMap<>();
+		cached.put(name("Kept"), register("Kept", new A()));
+		cached.put(name("Changed"), register("Changed", new A()));
+		cached.put(name("Gone"), register("Gone", new A()));
+		snapshot.write(cached);
+		mBeanServer.unregisterMBean(name("Gone"));
+		mBeanServer.unregisterMBean(name("Changed"));
+		register("Changed", new B());
+		register("New", new A());
+
+		buildNamespace();
+		Map<ObjectName, MBeanInfo> reconciled = awaitSnapshot(name("New"));
+		assertEquals(3, reconciled.size());
+		assertFalse(reconciled.containsKey(name("Gone")));
+
+		assertTrue(hasNode("Kept", "A"));
+		assertTrue(hasNode("New", "A"));
+		assertFalse(hasNode("Gone", "A"));
+		assertFalse(hasNode("Changed", "A"));
+		assertTrue(hasNode("Changed", "B"));
+	}
+
+	public static interface AMBean {
+
+		int getA();
+	}
+
+	public static class A implements AMBean {
+
+		@Override
+		public int getA() {
+			return 1;
+		}
+	}
+
+	public static interface BMBean {
+
+		int getB();
+	}
+
+	public static class B implements BMBean {
+
+		@Override
+		public int getB() {
+			return 2;
+		}
+	}
+}
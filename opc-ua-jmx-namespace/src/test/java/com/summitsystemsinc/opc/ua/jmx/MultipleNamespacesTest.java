@@ -0,0 +1,129 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import com.digitalpetri.opcua.sdk.server.OpcUaServer;
+import com.digitalpetri.opcua.sdk.server.api.config.OpcUaServerConfig;
+import com.digitalpetri.opcua.sdk.server.identity.UsernameIdentityValidator;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateManager;
+import com.digitalpetri.opcua.stack.core.application.DefaultCertificateValidator;
+import com.digitalpetri.opcua.stack.core.types.builtin.LocalizedText;
+import com.summitsystemsinc.opc.ua.jmx.types.DefaultTypes;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Several namespaces over one MBeanServer, in one JVM, on a server that is
+ * never started. Namespaces are lazy, only their workers are of interest.
+ *
+ * @author Justin Smith
+ */
+public class MultipleNamespacesTest {
+
+	private static final String URI_A = "urn:summitsystemsinc:opcua:jmx:test:a";
+	private static final String URI_B = "urn:summitsystemsinc:opcua:jmx:test:b";
+
+	private OpcUaServer server;
+	private MBeanServer mBeanServer;
+	private List<JmxNamespace> namespaces;
+
+	@Before
+	public void setUp() {
+		OpcUaServerConfig config = OpcUaServerConfig.builder()
+				.setApplicationName(LocalizedText.english("summit opc-ua test-server"))
+				.setApplicationUri("urn:summit:opcua:testServer")
+				.setCertificateManager(new DefaultCertificateManager())
+				.setCertificateValidator(new DefaultCertificateValidator(new File("./security")))
+				.setIdentityValidator(new UsernameIdentityValidator(true, (challenge) -> false))
+				.setProductUri("urn:summit:opcua:sdk")
+				.setServerName("")
+				.build();
+		server = new OpcUaServer(config);
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		namespaces = new ArrayList<>();
+	}
+
+	@After
+	public void tearDown() {
+		namespaces.stream().forEach(JmxNamespace::shutdown);
+	}
+
+	private JmxNamespace newNamespace(String uri, int shards) {
+		JmxNamespace retVal = new JmxNamespace(server,
+				server.getNamespaceManager().registerUri(uri),
+				uri,
+				mBeanServer,
+				DefaultTypes.newTypeFactories(),
+				JmxNamespaceConfig.builder()
+						.setRefreshShards(shards)
+						.setLazy(true)
+						.setTrackRegistrations(false)
+						.build());
+		namespaces.add(retVal);
+		return retVal;
+	}
+
+	private static boolean isWorkerRegistered(String uri, int shard) throws Exception {
+		return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+				JmxAttributeRefreshWorker.class.getPackage().getName()
+				+ ":type=" + JmxAttributeRefreshWorker.class.getSimpleName()
+				+ ",namespace=" + ObjectName.quote(uri)
+				+ (shard >= 0 ? ",shard=" + shard : "")));
+	}
+
+	@Test
+	public void testNamespacesRegisterTheirOwnWorkers() throws Exception {
+		newNamespace(URI_A, 1);
+		newNamespace(URI_B, 1);
+		assertTrue(isWorkerRegistered(URI_A, -1));
+		assertTrue(isWorkerRegistered(URI_B, -1));
+	}
+
+	@Test
+	public void testShardedNamespaceRegistersEveryShard() throws Exception {
+		JmxNamespace namespace = newNamespace(URI_A, 3);
+		assertEquals(3, namespace.getRefreshWorkers().size());
+		for (int i = 0; i < 3; i++) {
+			assertTrue("Shard " + i, isWorkerRegistered(URI_A, i));
+		}
+		assertFalse(isWorkerRegistered(URI_A, -1));
+	}
+
+	@Test
+	public void testShutdownFreesUri() throws Exception {
+		JmxNamespace namespace = newNamespace(URI_A, 1);
+		namespace.shutdown();
+		namespaces.remove(namespace);
+		assertFalse(isWorkerRegistered(URI_A, -1));
+
+		newNamespace(URI_A, 1);
+		assertTrue("Same URI can be used again.", isWorkerRegistered(URI_A, -1));
+	}
+}
@@ -0,0 +1,51 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class NumberConversionTest {
+
+	@Test
+	public void testIntegersMustFit() {
+		assertEquals((byte) 100, NumberConversion.convertExact(100L, "byte"));
+		assertNull(NumberConversion.convertExact(300, "byte"));
+		assertNull(NumberConversion.convertExact(3.9, "int"));
+		assertEquals(4, NumberConversion.convertExact(4.0, "java.lang.Integer"));
+		assertNull(NumberConversion.convertExact(Double.NaN, "long"));
+		assertNull(NumberConversion.convertExact(0x1p63, "long"));
+		assertEquals(Long.MIN_VALUE, NumberConversion.convertExact(-0x1p63, "long"));
+	}
+
+	@Test
+	public void testFloatingTypesTakeNumbersInRange() {
+		assertEquals(0.5f, NumberConversion.convertExact(0.5, "float"));
+		assertNull(NumberConversion.convertExact(1e300, "float"));
+		assertEquals(3.0, NumberConversion.convertExact(3, "double"));
+		assertNull(NumberConversion.convertExact("3", "double"));
+		assertNull(NumberConversion.convertExact(1, "boolean"));
+	}
+}
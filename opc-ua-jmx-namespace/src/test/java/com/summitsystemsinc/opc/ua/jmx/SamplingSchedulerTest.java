@@ -0,0 +1,116 @@
+package com.summitsystemsinc.opc.ua.jmx;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.ObjectName;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class SamplingSchedulerTest {
+
+	private Map<JmxPolledAttribute, Long> intervals;
+	private SamplingScheduler scheduler;
+	private List<JmxPolledAttribute> read;
+	private int readCalls;
+
+	@Before
+	public void setUp() {
+		intervals = new HashMap<>();
+		scheduler = new SamplingScheduler(100, (jpa) -> intervals.getOrDefault(jpa, 0L));
+		read = new ArrayList<>();
+		readCalls = 0;
+	}
+
+	private JmxPolledAttribute attribute(String on, String name, long intervalMs) throws Exception {
+		JmxPolledAttribute jpa = new JmxPolledAttribute(new ObjectName(on), name, null);
+		intervals.put(jpa, intervalMs);
+		scheduler.schedule(jpa);
+		return jpa;
+	}
+
+	private int tick(long nowMs) {
+		read.clear();
+		return scheduler.tick(nowMs, (on, group) -> {
+			readCalls++;
+			read.addAll(group);
+		});
+	}
+
+	@Test
+	public void testIntervalsRoundedToTick() {
+		assertEquals(100, scheduler.roundInterval(1));
+		assertEquals(100, scheduler.roundInterval(100));
+		assertEquals(200, scheduler.roundInterval(101));
+	}
+
+	@Test
+	public void testAttributesPolledAtTheirInterval() throws Exception {
+		JmxPolledAttribute fast = attribute("test:type=A", "Fast", 100);
+		JmxPolledAttribute slow = attribute("test:type=A", "Slow", 1000);
+
+		assertEquals(2, tick(0));
+		assertEquals("Same MBean is read in one call.", 1, readCalls);
+
+		for (long now = 100; now < 1000; now += 100) {
+			tick(now);
+			assertEquals(1, read.size());
+			assertSame(fast, read.get(0));
+		}
+
+		assertEquals(2, tick(1000));
+		assertTrue(read.contains(slow));
+	}
+
+	@Test
+	public void testNextDueIsEarliestBucket() throws Exception {
+		assertEquals(Long.MAX_VALUE, scheduler.getNextDueMs());
+		attribute("test:type=A", "Fast", 200);
+		attribute("test:type=A", "Slow", 1000);
+		tick(0);
+		assertEquals(200, scheduler.getNextDueMs());
+	}
+
+	@Test
+	public void testRescheduleMovesAttribute() throws Exception {
+		JmxPolledAttribute jpa = attribute("test:type=A", "Value", 1000);
+		tick(0);
+		assertEquals(0, tick(500));
+
+		intervals.put(jpa, 500L);
+		scheduler.schedule(jpa);
+		assertEquals(1, tick(500));
+		assertEquals(1, scheduler.getNumberIntervals());
+
+		intervals.put(jpa, 0L);
+		scheduler.schedule(jpa);
+		assertEquals(0, tick(1000));
+		assertEquals(0, scheduler.getNumberIntervals());
+	}
+}
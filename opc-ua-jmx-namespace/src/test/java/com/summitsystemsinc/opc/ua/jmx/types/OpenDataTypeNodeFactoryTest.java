@@ -0,0 +1,51 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import java.util.Arrays;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class OpenDataTypeNodeFactoryTest {
+
+	@Test
+	public void testRowNameEscapesPathSeparator() throws Exception {
+		CompositeType rowType = new CompositeType("Row", "Row",
+				new String[]{"path", "id"},
+				new String[]{"path", "id"},
+				new OpenType<?>[]{SimpleType.STRING, SimpleType.INTEGER});
+		CompositeDataSupport row = new CompositeDataSupport(rowType,
+				new String[]{"path", "id"},
+				new Object[]{"/tmp/100%", 7});
+
+		String name = OpenDataTypeNodeFactory.rowName(Arrays.asList("path", "id"), row);
+		assertEquals("%2Ftmp%2F100%25,7", name);
+		assertFalse(name.contains("/"));
+	}
+}
@@ -0,0 +1,79 @@
+package com.summitsystemsinc.opc.ua.jmx.types;
+
+/*
+ * #%L
+ * OPC-UA :: Namespace :: JMX
+ * %%
+ * Copyright (C) 2016 Summit Management Systems, Inc.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Justin Smith
+ */
+public class ValueSlotTest {
+
+	@Test
+	public void testUnchangedPrimitiveNotReported() {
+		ValueSlot slot = new ValueSlot(ValueSlot.Kind.LONG);
+		assertTrue("First value is always a change.", slot.update(42L));
+		assertFalse(slot.update(42L));
+		assertTrue(slot.update(43L));
+		assertTrue(slot.isPrimitive());
+		assertEquals(43L, slot.getBits());
+	}
+
+	@Test
+	public void testMismatchedValuesComparedWithEquals() {
+		ValueSlot slot = new ValueSlot(ValueSlot.Kind.DOUBLE);
+		assertTrue(slot.update(1.5d));
+		assertTrue(slot.update("UNAVAILABLE"));
+		assertFalse(slot.isPrimitive());
+		assertFalse(slot.update("UNAVAILABLE"));
+		assertTrue(slot.update(null));
+		assertFalse(slot.update(null));
+		assertTrue(slot.update(1.5d));
+	}
+
+	@Test
+	public void testArraysChangedInPlaceDetected() {
+		ValueSlot slot = new ValueSlot(ValueSlot.Kind.ARRAY);
+		long[] ids = {1, 2, 3};
+		assertTrue(slot.update(ids));
+		assertFalse(slot.update(new long[]{1, 2, 3}));
+		ids[1] = 5;
+		assertTrue(slot.update(ids));
+		assertArrayEquals(ids, (long[]) slot.getObject());
+		assertNotSame(ids, slot.getObject());
+	}
+
+	@Test
+	public void testDeadband() {
+		ValueSlot slot = new ValueSlot(ValueSlot.Kind.DOUBLE);
+		Deadband absolute = Deadband.absolute(10);
+		assertTrue(slot.update(100d, absolute));
+		assertFalse(slot.update(109d, absolute));
+		assertTrue(slot.update(111d, absolute));
+		assertEquals(111d, slot.getDouble(), 0);
+
+		Deadband percent = Deadband.percent(5);
+		assertFalse("Within 5% of 111", slot.update(116d, percent));
+		assertTrue(slot.update(117d, percent));
+	}
+}